@@ -0,0 +1,91 @@
+package com.manuzak.connectionpool.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.manuzak.ConnectionPool.mock.MockConnection;
+import com.manuzak.ConnectionPool.mock.MockConnectionFactory;
+import com.manuzak.connectionpool.ConnectionPoolImpl;
+
+/**
+ * Cost of going through the pool's connection and statement handles instead
+ * of calling the mock driver directly. Each raw benchmark has a pooled twin;
+ * the difference between the two is the per-call overhead of the handles.
+ * 
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DelegationBenchmark {
+
+	@State(Scope.Thread)
+	public static class Handles {
+		ConnectionPoolImpl connectionPool;
+		Connection pooled;
+		Connection raw;
+		PreparedStatement pooledStatement;
+		PreparedStatement rawStatement;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			connectionPool = new ConnectionPoolImpl(new MockConnectionFactory(),
+					1, 1);
+			pooled = connectionPool.getConnection();
+			raw = pooled.unwrap(MockConnection.class);
+			pooledStatement = pooled.prepareStatement("SELECT 1");
+			rawStatement = raw.prepareStatement("SELECT 1");
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws SQLException {
+			connectionPool.releaseConnection(pooled);
+			connectionPool.closeAllConnections();
+		}
+	}
+
+	@Benchmark
+	public boolean rawGetAutoCommit(Handles handles) throws SQLException {
+		return handles.raw.getAutoCommit();
+	}
+
+	@Benchmark
+	public boolean pooledGetAutoCommit(Handles handles) throws SQLException {
+		return handles.pooled.getAutoCommit();
+	}
+
+	@Benchmark
+	public void rawSetInt(Handles handles) throws SQLException {
+		handles.rawStatement.setInt(1, 42);
+	}
+
+	@Benchmark
+	public void pooledSetInt(Handles handles) throws SQLException {
+		handles.pooledStatement.setInt(1, 42);
+	}
+
+	/**
+	 * Includes the allocation of the statement handle.
+	 */
+	@Benchmark
+	public PreparedStatement rawPrepareStatement(Handles handles)
+			throws SQLException {
+		return handles.raw.prepareStatement("SELECT 1");
+	}
+
+	@Benchmark
+	public PreparedStatement pooledPrepareStatement(Handles handles)
+			throws SQLException {
+		return handles.pooled.prepareStatement("SELECT 1");
+	}
+}
@@ -0,0 +1,115 @@
+package com.manuzak.connectionpool.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.manuzak.ConnectionPool.mock.MockConnectionFactory;
+import com.manuzak.connectionpool.ConnectionPoolConfig;
+import com.manuzak.connectionpool.ConnectionPoolImpl;
+
+/**
+ * Hot paths of ConnectionPoolImpl, measured against mock connections so that
+ * only the pool's own overhead is counted.
+ * 
+ * An unsaturated pool has twice as many connections as borrowing threads,
+ * so a borrower never has to wait. A saturated pool has one fewer, so
+ * borrowers queue for connections released by the other threads. A single
+ * borrower cannot saturate a pool, so PoolBenchmarkRunner only runs that
+ * case unsaturated.
+ * 
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PoolBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Pool {
+
+		@Param({ "false", "true" })
+		public boolean saturated;
+
+		/*
+		 * 1 for a single free list, 0 (ConnectionPoolConfig.STRIPE_PER_CORE)
+		 * for one stripe per core
+		 */
+		@Param({ "1", "0" })
+		public int stripes;
+
+		ConnectionPoolImpl connectionPool;
+
+		@Setup(Level.Trial)
+		public void setUp(BenchmarkParams params) throws Exception {
+			// The first thread group borrows; in sizeUnderLoad the other
+			// group only reads the pool size
+			int[] groups = params.getThreadGroups();
+			int groupSize = 0;
+			for (int size : groups) {
+				groupSize += size;
+			}
+			int borrowers = params.getThreads() * groups[0] / groupSize;
+			if (saturated && borrowers < 2) {
+				throw new IllegalStateException(
+						"A single borrower cannot saturate the pool");
+			}
+			int maxConnections = saturated ? borrowers - 1 : borrowers * 2;
+
+			ConnectionPoolConfig config = new ConnectionPoolConfig(
+					maxConnections, maxConnections);
+			config.setStripes(stripes);
+			connectionPool = new ConnectionPoolImpl(
+					new MockConnectionFactory(), config);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			connectionPool.closeAllConnections();
+		}
+	}
+
+	/**
+	 * One borrow and release cycle.
+	 */
+	@Benchmark
+	public Connection borrowRelease(Pool pool) throws SQLException {
+		Connection con = pool.connectionPool.getConnection(10,
+				TimeUnit.SECONDS);
+		pool.connectionPool.releaseConnection(con);
+		return con;
+	}
+
+	/**
+	 * Borrowers for the sizeUnderLoad group.
+	 */
+	@Benchmark
+	@Group("sizeUnderLoad")
+	@GroupThreads(3)
+	public Connection borrowReleaseUnderLoad(Pool pool) throws SQLException {
+		return borrowRelease(pool);
+	}
+
+	/**
+	 * getPoolSize() while the other threads in the group borrow and release.
+	 */
+	@Benchmark
+	@Group("sizeUnderLoad")
+	@GroupThreads(1)
+	public int poolSize(Pool pool) {
+		return pool.connectionPool.getPoolSize();
+	}
+}
@@ -0,0 +1,77 @@
+package com.manuzak.connectionpool.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs PoolBenchmark at 1, 2, 4 ... N threads, then DelegationBenchmark on a
+ * single thread, then VirtualThreadBenchmark.
+ * 
+ * For every thread count the pool is measured twice: once for throughput in
+ * ops/s and once for average latency in ns/op. Both runs attach the GC
+ * profiler, whose gc.alloc.rate.norm line is the allocation per operation.
+ * 
+ * Usage: java -jar benchmarks.jar [maxThreads]
+ * 
+ * maxThreads defaults to the number of available processors.
+ */
+public class PoolBenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime
+				.getRuntime().availableProcessors();
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			run(poolOptions(threads).include(benchmark("borrowRelease"))
+					.threads(threads).mode(Mode.Throughput)
+					.timeUnit(TimeUnit.SECONDS));
+			run(poolOptions(threads).include(benchmark("borrowRelease"))
+					.threads(threads).mode(Mode.AverageTime)
+					.timeUnit(TimeUnit.NANOSECONDS));
+
+			if (threads > 1) {
+				// Pool size queries from one thread, borrowers on the rest
+				run(poolOptions(threads - 1).include(benchmark("sizeUnderLoad"))
+						.threadGroups(threads - 1, 1).mode(Mode.AverageTime)
+						.timeUnit(TimeUnit.NANOSECONDS));
+			}
+		}
+
+		run(options().include(DelegationBenchmark.class.getName())
+				.mode(Mode.AverageTime).timeUnit(TimeUnit.NANOSECONDS));
+
+		run(options().include(VirtualThreadBenchmark.class.getName()));
+	}
+
+	private static ChainedOptionsBuilder options() {
+		return new OptionsBuilder().addProfiler(GCProfiler.class);
+	}
+
+	/**
+	 * Options for PoolBenchmark with <borrowers> borrowing threads. A single
+	 * borrower only runs against an unsaturated pool, as it never has to
+	 * wait.
+	 */
+	private static ChainedOptionsBuilder poolOptions(int borrowers) {
+		ChainedOptionsBuilder options = options();
+		if (borrowers == 1) {
+			options.param("saturated", "false");
+		}
+		return options;
+	}
+
+	private static String benchmark(String name) {
+		return PoolBenchmark.class.getName() + "." + name + "$";
+	}
+
+	private static void run(ChainedOptionsBuilder options)
+			throws RunnerException {
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,116 @@
+package com.manuzak.connectionpool.benchmarks;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.manuzak.ConnectionPool.mock.MockConnectionFactory;
+import com.manuzak.connectionpool.ConnectionPoolImpl;
+
+/**
+ * Many more virtual threads than pooled connections, by default 10,000 for
+ * 50, each borrowing and releasing a connection a number of times around a
+ * short simulated query.
+ * 
+ * Every invocation is one round of all the threads, timed from their start
+ * until the last one has finished. On runtimes without virtual threads,
+ * platform threads are used instead so that the numbers can be compared.
+ * 
+ */
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VirtualThreadBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Pool {
+
+		@Param({ "10000" })
+		public int clients;
+
+		@Param({ "50" })
+		public int maxConnections;
+
+		@Param({ "20" })
+		public int borrowsPerClient;
+
+		ConnectionPoolImpl connectionPool;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			connectionPool = new ConnectionPoolImpl(
+					new MockConnectionFactory(), maxConnections, maxConnections);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			connectionPool.closeAllConnections();
+		}
+	}
+
+	/**
+	 * One round of every client borrowing <borrowsPerClient> times.
+	 * 
+	 * @return the number of borrows that failed, expected to be 0
+	 */
+	@Benchmark
+	public int contention(final Pool pool) throws Exception {
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(pool.clients);
+
+		Runnable client = new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < pool.borrowsPerClient; i++) {
+						Connection con = pool.connectionPool.getConnection(60,
+								TimeUnit.SECONDS);
+						// Simulate a short query
+						Thread.sleep(1);
+						pool.connectionPool.releaseConnection(con);
+					}
+				} catch (Exception e) {
+					failures.incrementAndGet();
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		for (int i = 0; i < pool.clients; i++) {
+			startVirtualThread(client);
+		}
+		done.await();
+		return failures.get();
+	}
+
+	/**
+	 * Start a virtual thread if the runtime supports them, or a platform thread
+	 * otherwise.
+	 */
+	private static void startVirtualThread(Runnable task) throws Exception {
+		try {
+			Method start = Thread.class.getMethod("startVirtualThread",
+					Runnable.class);
+			start.invoke(null, task);
+		} catch (NoSuchMethodException e) {
+			new Thread(task).start();
+		}
+	}
+}
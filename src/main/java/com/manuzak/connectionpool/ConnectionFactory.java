@@ -9,6 +9,12 @@ import java.sql.SQLException;
  * Separating the factory allows for this solution to be database agnostic.
  * Additionally, it allows for mock/fake database connection implementations to
  * be used for testing.
+ * 
+ * The pool never holds a monitor or lock while calling the factory, and it
+ * waits for connections with java.util.concurrent parking only. A virtual
+ * thread that blocks inside createConnection() therefore does not pin its
+ * carrier thread, as long as the factory itself avoids synchronized blocks
+ * around blocking I/O.
  */
 public interface ConnectionFactory {
 	public Connection createConnection() throws SQLException;
@@ -2,6 +2,10 @@ package com.manuzak.connectionpool;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 
@@ -12,5 +16,34 @@ public interface ConnectionPool {
 
 	Connection getConnection() throws SQLException;
 
+	/**
+	 * Like getConnection(), but if the pool is saturated wait up to the given
+	 * timeout for another client to release a connection.
+	 */
+	Connection getConnection(long timeout, TimeUnit unit) throws SQLException;
+
 	void releaseConnection(Connection con) throws SQLException;
+
+	/**
+	 * Like getConnection(long, TimeUnit), but without blocking the calling
+	 * thread. The future completes once a connection is available, or fails
+	 * with the SQLException getConnection() would have thrown.
+	 */
+	CompletableFuture<Connection> getConnectionAsync(long timeout,
+			TimeUnit unit);
+
+	/**
+	 * Borrow <count> connections at once, waiting up to the given timeout for
+	 * all of them. Either all of them are returned, or none are and whatever
+	 * had been acquired is given back to the pool.
+	 */
+	List<Connection> getConnections(int count, long timeout, TimeUnit unit)
+			throws SQLException;
+
+	/**
+	 * Release every connection in the collection, e.g. those borrowed with
+	 * getConnections().
+	 */
+	void releaseConnections(Collection<? extends Connection> cons)
+			throws SQLException;
 }
@@ -0,0 +1,307 @@
+package com.manuzak.connectionpool;
+
+/**
+ * Tuning parameters for ConnectionPoolImpl.
+ * 
+ * The pool reads the settings once, when it is created, so changing a config
+ * object afterwards does not affect pools that were already built from it.
+ * 
+ */
+public class ConnectionPoolConfig {
+
+	/**
+	 * Value for setStripes() that creates one stripe per available processor.
+	 */
+	public static final int STRIPE_PER_CORE = 0;
+
+	private int initialConnections = 0;
+	private int maxConnections = 10;
+	private int stripes = 1;
+	private int validationBudget = 3;
+	private long housekeepingPeriod = 30000;
+	private long keepaliveTime = 0;
+	private int validationTimeout = 5;
+	private String connectionTestQuery = null;
+	private long validationSkipWindow = 500;
+	private long idleTimeout = 0;
+	private int minIdle = 0;
+	private long maxLifetime = 0;
+	private long maxLifetimeJitter = -1;
+	private int warmupConcurrency = 1;
+	private boolean asynchronousWarmup = false;
+	private long leakDetectionThreshold = 0;
+	private int leakTraceSampling = 1;
+	private long abandonTimeout = 0;
+	private int statementCacheSize = 0;
+
+	public ConnectionPoolConfig() {
+	}
+
+	public ConnectionPoolConfig(int initialConnections, int maxConnections) {
+		this.initialConnections = initialConnections;
+		this.maxConnections = maxConnections;
+	}
+
+	public int getInitialConnections() {
+		return initialConnections;
+	}
+
+	/**
+	 * Number of connections opened when the pool is created.
+	 */
+	public void setInitialConnections(int initialConnections) {
+		this.initialConnections = initialConnections;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Upper bound on the number of connections, free and busy, that the pool
+	 * will hold at any time.
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getStripes() {
+		return stripes;
+	}
+
+	/**
+	 * Number of independent free lists the pool is split into.
+	 * 
+	 * Each thread prefers its own stripe and only steals from the others when
+	 * it is empty, which spreads contention on hosts with many cores. The
+	 * default of 1 keeps a single shared free list; STRIPE_PER_CORE creates
+	 * one stripe per available processor. <maxConnections> is always enforced
+	 * across all stripes.
+	 */
+	public void setStripes(int stripes) {
+		this.stripes = stripes;
+	}
+
+	public int getValidationBudget() {
+		return validationBudget;
+	}
+
+	/**
+	 * Maximum number of free connections a single borrow will check before it
+	 * stops paying for dead ones.
+	 * 
+	 * After a database failover the free list can be full of closed
+	 * connections. Once a borrower has used up its budget, the remaining free
+	 * connections are left to a background check and the borrower opens a
+	 * fresh connection or waits instead.
+	 * 
+	 * Must be at least 1.
+	 */
+	public void setValidationBudget(int validationBudget) {
+		this.validationBudget = validationBudget;
+	}
+
+	public long getHousekeepingPeriod() {
+		return housekeepingPeriod;
+	}
+
+	/**
+	 * How often, in milliseconds, the background housekeeper looks at the
+	 * pool's connections.
+	 */
+	public void setHousekeepingPeriod(long housekeepingPeriod) {
+		this.housekeepingPeriod = housekeepingPeriod;
+	}
+
+	public long getKeepaliveTime() {
+		return keepaliveTime;
+	}
+
+	/**
+	 * Idle time, in milliseconds, after which the housekeeper validates a free
+	 * connection. The validation doubles as a keepalive, so this should be
+	 * shorter than any server, NAT or firewall idle timeout. 0 disables it.
+	 */
+	public void setKeepaliveTime(long keepaliveTime) {
+		this.keepaliveTime = keepaliveTime;
+	}
+
+	public int getValidationTimeout() {
+		return validationTimeout;
+	}
+
+	/**
+	 * Seconds a validation may take before the connection is considered dead.
+	 */
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public String getConnectionTestQuery() {
+		return connectionTestQuery;
+	}
+
+	/**
+	 * Query used to validate connections, for drivers that do not implement
+	 * Connection.isValid() properly. When not set, isValid() is used.
+	 */
+	public void setConnectionTestQuery(String connectionTestQuery) {
+		this.connectionTestQuery = connectionTestQuery;
+	}
+
+	public long getValidationSkipWindow() {
+		return validationSkipWindow;
+	}
+
+	/**
+	 * Milliseconds after its release during which a connection is handed out
+	 * again without validation. Connections that have been idle for longer
+	 * are validated with isValid() (or the test query) before a borrower gets
+	 * them. 0 validates on every borrow.
+	 */
+	public void setValidationSkipWindow(long validationSkipWindow) {
+		this.validationSkipWindow = validationSkipWindow;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Milliseconds a free connection may sit unused before the housekeeper
+	 * closes it, as long as at least <minIdle> free connections remain. 0
+	 * keeps idle connections open until the pool is closed.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	/**
+	 * Number of spare free connections the pool keeps ready.
+	 * 
+	 * When the free connections drop below this, the housekeeper opens new
+	 * ones in the background (up to <maxConnections>), so that borrowers
+	 * rarely pay for a handshake themselves. Idle eviction never goes below
+	 * it either.
+	 */
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public long getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	/**
+	 * Milliseconds after which a connection is retired and, if needed,
+	 * replaced by a new one. Retirement only happens while the connection is
+	 * free or as it is released, never while a client is using it. 0 lets
+	 * connections live until they fail or are evicted.
+	 */
+	public void setMaxLifetime(long maxLifetime) {
+		this.maxLifetime = maxLifetime;
+	}
+
+	public long getMaxLifetimeJitter() {
+		return maxLifetimeJitter;
+	}
+
+	/**
+	 * Upper bound, in milliseconds, of the random amount taken off each
+	 * connection's <maxLifetime>, so that connections opened together are not
+	 * all retired together. The default of -1 uses 2.5% of <maxLifetime>.
+	 */
+	public void setMaxLifetimeJitter(long maxLifetimeJitter) {
+		this.maxLifetimeJitter = maxLifetimeJitter;
+	}
+
+	public int getWarmupConcurrency() {
+		return warmupConcurrency;
+	}
+
+	/**
+	 * Number of initial connections opened in parallel when the pool is
+	 * created. The default of 1 opens them one after another.
+	 */
+	public void setWarmupConcurrency(int warmupConcurrency) {
+		this.warmupConcurrency = warmupConcurrency;
+	}
+
+	public boolean isAsynchronousWarmup() {
+		return asynchronousWarmup;
+	}
+
+	/**
+	 * Return from the pool's constructor straight away and open the initial
+	 * connections in the background. ConnectionPoolImpl.getReadyFuture()
+	 * completes once they are all open. Clients may use the pool in the
+	 * meantime.
+	 */
+	public void setAsynchronousWarmup(boolean asynchronousWarmup) {
+		this.asynchronousWarmup = asynchronousWarmup;
+	}
+
+	public long getLeakDetectionThreshold() {
+		return leakDetectionThreshold;
+	}
+
+	/**
+	 * Milliseconds a client may hold a connection before the housekeeper
+	 * reports it as a possible leak. Each borrow is reported at most once, and
+	 * the check runs every <housekeepingPeriod>. 0 disables leak detection.
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+
+	public int getLeakTraceSampling() {
+		return leakTraceSampling;
+	}
+
+	/**
+	 * Record the stack trace of one in every <leakTraceSampling> borrows, so
+	 * that a leak report can show where the connection was borrowed. Taking a
+	 * stack trace is expensive; a larger value keeps the borrow path cheap at
+	 * the cost of some reports coming without one. The default of 1 records
+	 * every borrow, 0 none. Only used with a <leakDetectionThreshold> or an
+	 * <abandonTimeout>.
+	 */
+	public void setLeakTraceSampling(int leakTraceSampling) {
+		this.leakTraceSampling = leakTraceSampling;
+	}
+
+	public long getAbandonTimeout() {
+		return abandonTimeout;
+	}
+
+	/**
+	 * Milliseconds after which a connection still held by a client is
+	 * considered abandoned. The housekeeper then closes it and frees its slot,
+	 * so that a leaking code path cannot use up the whole pool. The client's
+	 * later calls on the connection fail. 0 never reclaims connections.
+	 */
+	public void setAbandonTimeout(long abandonTimeout) {
+		this.abandonTimeout = abandonTimeout;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Number of prepared statements each connection keeps open for reuse.
+	 * 
+	 * A cached statement goes back to the cache when the client closes it,
+	 * and preparing the same SQL with the same result set options on that
+	 * connection again reuses it without a round trip. The least recently
+	 * used statement is closed when the cache is full. Statements prepared
+	 * with column indexes or names are not cached. 0 disables the cache.
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+}
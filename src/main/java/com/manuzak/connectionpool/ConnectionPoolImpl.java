@@ -1,9 +1,42 @@
 package com.manuzak.connectionpool;
 
-import java.security.InvalidParameterException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Vector;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 /**
  * @author Jonathan Manuzak
@@ -11,10 +44,147 @@ import java.util.Vector;
  */
 public class ConnectionPoolImpl implements ConnectionPool {
 	private int maxConnections;
+	private int validationBudget;
+	private long keepaliveNanos;
+	private long validationSkipNanos;
+	private long idleTimeoutNanos;
+	private int minIdle;
+	private long maxLifetimeNanos;
+	private long maxLifetimeJitterNanos;
+	private int validationTimeout;
+	private String connectionTestQuery;
+	private long leakDetectionNanos;
+	private long abandonNanos;
+	private int statementCacheSize;
+	private int leakTraceSampling;
+	private long housekeepingPeriod;
 	private ConnectionFactory connectionFactory;
 
-	private Vector<Connection> freeConnections;
-	private Vector<Connection> busyConnections;
+	private static final Logger LOGGER = Logger
+			.getLogger(ConnectionPoolImpl.class.getName());
+
+	/*
+	 * Free connections are kept in lock-free deques and used as stacks (most
+	 * recently released first). With a single stripe there is one shared
+	 * free list; with several, each thread releases to and borrows from its
+	 * home stripe and only steals from the others when that is empty.
+	 * 
+	 * Every connection owned by the pool is registered in <connections> by
+	 * identity, without relying on the driver's equals(), and its PoolEntry
+	 * records whether it is free or busy. Clients get a PooledConnection
+	 * handle that points at the entry, so a release finds it without a
+	 * lookup. None of these structures takes a monitor, so
+	 * borrowing and releasing threads only contend on the individual CAS
+	 * operations.
+	 */
+	private ConcurrentLinkedDeque<PoolEntry>[] freeConnections;
+	private ConcurrentHashMap<PoolEntry.Key, PoolEntry> connections;
+
+	/*
+	 * The connection each thread released last. A thread that borrows again
+	 * tries to reclaim it first, which touches no shared structure at all. The
+	 * entry is also published to <freeConnections>, so other threads can still
+	 * steal it; whoever wins the entry's state transition gets it.
+	 * 
+	 * Virtual threads skip the cache. They are cheap and short-lived, so a
+	 * per-thread slot would rarely be hit again and would only add garbage.
+	 */
+	private final ThreadLocal<PoolEntry[]> lastReleased = new ThreadLocal<PoolEntry[]>() {
+		protected PoolEntry[] initialValue() {
+			return new PoolEntry[1];
+		}
+	};
+
+	/*
+	 * Thread.isVirtual(), on runtimes that have virtual threads. It is looked
+	 * up reflectively so the pool keeps running on older JDKs.
+	 */
+	private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+	/*
+	 * Total number of connections owned by the pool, including connections
+	 * that are still being opened. A slot is reserved here before the factory
+	 * is called, which is what enforces <maxConnections> without a lock.
+	 */
+	private final AtomicInteger totalConnections = new AtomicInteger();
+
+	/*
+	 * Clients waiting for a connection park on <handoffQueue>. A releasing
+	 * thread that sees <waiters> hands its connection straight to the longest
+	 * waiting client instead of putting it on a free list, so the waiter does
+	 * not have to race other borrowers for it. The queue is fair, which makes
+	 * it first come, first served.
+	 */
+	private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<PoolEntry>(
+			true);
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	/*
+	 * Futures of getConnectionAsync() calls waiting for a connection, oldest
+	 * first. They hold no thread while they wait. A releasing thread that
+	 * finds no blocked client completes the first future that is still
+	 * pending; futures that have timed out or been cancelled are skipped.
+	 */
+	private final ConcurrentLinkedQueue<CompletableFuture<Connection>> asyncWaiters = new ConcurrentLinkedQueue<CompletableFuture<Connection>>();
+
+	/*
+	 * Handed to a waiting client when a slot is freed rather than a
+	 * connection released, telling it to retry opening a connection itself.
+	 */
+	private static final PoolEntry SLOT_FREED = new PoolEntry(null,
+			PoolEntry.STATE_REMOVED);
+
+	/*
+	 * How often handOff() retries an offer while clients are registered but
+	 * not parked. Bounded, since the registered clients may all be busy, e.g.
+	 * dropping dead connections themselves.
+	 */
+	private static final int MAX_HANDOFF_SPINS = 1 << 12;
+
+	/*
+	 * Background thread for work that should stay off the borrow path, such
+	 * as checking free connections a borrower had no budget left for and
+	 * keeping idle connections alive. It is only started when first needed.
+	 */
+	private final AtomicReference<ScheduledThreadPoolExecutor> housekeeper = new AtomicReference<ScheduledThreadPoolExecutor>();
+	private final AtomicBoolean validationScheduled = new AtomicBoolean();
+
+	/*
+	 * Threads serving getConnectionAsync() calls that cannot be served
+	 * without blocking, kept apart from the housekeeper so that a slow
+	 * factory does not serialize the opens. At most <maxConnections> opens
+	 * can be under way, so there is no point in more threads. Started when
+	 * first needed; idle threads exit after a minute.
+	 */
+	private final AtomicReference<ThreadPoolExecutor> opener = new AtomicReference<ThreadPoolExecutor>();
+
+	/*
+	 * Thread failing getConnectionAsync() futures that time out. It runs
+	 * nothing else, so that the timeouts are honoured however long other
+	 * background work takes, and is left running by closeAllConnections()
+	 * for the futures still pending. Started when first needed; exits after a
+	 * minute without timeouts to watch.
+	 */
+	private final AtomicReference<ScheduledThreadPoolExecutor> timer = new AtomicReference<ScheduledThreadPoolExecutor>();
+	private final AtomicBoolean fillScheduled = new AtomicBoolean();
+
+	/*
+	 * Held while a getConnections() call gathers its connections, so that two
+	 * batches never each hold part of what they need while waiting for the
+	 * rest. Single borrows do not take it.
+	 */
+	private final ReentrantLock batchLock = new ReentrantLock(true);
+
+	/*
+	 * Statement cache lookups across all connections, counted by the handles
+	 */
+	final LongAdder statementCacheHits = new LongAdder();
+	final LongAdder statementCacheMisses = new LongAdder();
+
+	/*
+	 * Completes once the initial connections have been opened.
+	 */
+	private CompletableFuture<Void> ready;
 
 	/**
 	 * Create a new connection pool and optionally (initialConnections > 0)
@@ -34,22 +204,102 @@ public class ConnectionPoolImpl implements ConnectionPool {
 	 */
 	public ConnectionPoolImpl(ConnectionFactory factory,
 			int initialConnections, int maxConnections) throws Exception {
+		this(factory, new ConnectionPoolConfig(initialConnections,
+				maxConnections));
+	}
+
+	/**
+	 * Create a new connection pool with the given tuning parameters.
+	 * 
+	 * @param factory
+	 * @param config
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ConnectionPoolImpl(ConnectionFactory factory,
+			ConnectionPoolConfig config) throws Exception {
 
 		// Perform a sanity check of the initialization parameters
+		if (factory == null || config == null) {
+			throw new Exception("Invalid parameters");
+		}
+		int initialConnections = config.getInitialConnections();
+		int maxConnections = config.getMaxConnections();
+		int stripes = config.getStripes();
+		if (stripes == ConnectionPoolConfig.STRIPE_PER_CORE) {
+			stripes = Runtime.getRuntime().availableProcessors();
+		}
 		if (initialConnections > maxConnections || maxConnections < 1
-				|| factory == null) {
-			throw new InvalidParameterException("Invalid parameters");
+				|| initialConnections < 0 || stripes < 1
+				|| config.getHousekeepingPeriod() <= 0
+				|| config.getKeepaliveTime() < 0
+				|| config.getValidationTimeout() < 0
+				|| config.getValidationSkipWindow() < 0
+				|| config.getValidationBudget() < 1
+				|| config.getIdleTimeout() < 0 || config.getMinIdle() < 0
+				|| config.getMinIdle() > maxConnections
+				|| config.getMaxLifetime() < 0
+				|| config.getMaxLifetimeJitter() > config.getMaxLifetime()
+				|| config.getWarmupConcurrency() < 1
+				|| config.getLeakDetectionThreshold() < 0
+				|| config.getLeakTraceSampling() < 0
+				|| config.getAbandonTimeout() < 0
+				|| config.getStatementCacheSize() < 0) {
+			throw new Exception("Invalid parameters");
 		}
 
 		this.connectionFactory = factory;
 		this.maxConnections = maxConnections;
+		this.validationBudget = config.getValidationBudget();
+		this.keepaliveNanos = TimeUnit.MILLISECONDS.toNanos(config
+				.getKeepaliveTime());
+		this.validationTimeout = config.getValidationTimeout();
+		this.validationSkipNanos = TimeUnit.MILLISECONDS.toNanos(config
+				.getValidationSkipWindow());
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config
+				.getIdleTimeout());
+		this.minIdle = config.getMinIdle();
+		this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(config
+				.getMaxLifetime());
+		this.maxLifetimeJitterNanos = config.getMaxLifetimeJitter() < 0 ? maxLifetimeNanos / 40
+				: TimeUnit.MILLISECONDS.toNanos(config.getMaxLifetimeJitter());
+		this.connectionTestQuery = config.getConnectionTestQuery();
+		this.leakDetectionNanos = TimeUnit.MILLISECONDS.toNanos(config
+				.getLeakDetectionThreshold());
+		this.leakTraceSampling = config.getLeakTraceSampling();
+		this.abandonNanos = TimeUnit.MILLISECONDS.toNanos(config
+				.getAbandonTimeout());
+		this.statementCacheSize = config.getStatementCacheSize();
+		if (keepaliveNanos > 0 || idleTimeoutNanos > 0 || maxLifetimeNanos > 0
+				|| minIdle > 0 || leakDetectionNanos > 0 || abandonNanos > 0) {
+			this.housekeepingPeriod = config.getHousekeepingPeriod();
+		}
 
-		// Create free and busy vectors to hold the created connections
-		freeConnections = new Vector<Connection>(initialConnections);
-		busyConnections = new Vector<Connection>();
+		// Create the free lists and registry to hold the created connections
+		freeConnections = new ConcurrentLinkedDeque[stripes];
+		for (int i = 0; i < stripes; i++) {
+			freeConnections[i] = new ConcurrentLinkedDeque<PoolEntry>();
+		}
+		connections = new ConcurrentHashMap<PoolEntry.Key, PoolEntry>(maxConnections);
+
+		if (config.getWarmupConcurrency() > 1 || config.isAsynchronousWarmup()) {
+			ready = warmUp(initialConnections, config.getWarmupConcurrency());
+			if (!config.isAsynchronousWarmup()) {
+				awaitWarmup();
+			}
+		} else {
+			if (initialConnections > 0)
+				createInitialConnections(initialConnections);
+			ready = CompletableFuture.completedFuture(null);
+		}
 
-		if (initialConnections > 0)
-			createInitialConnections(initialConnections);
+		if (housekeepingPeriod > 0) {
+			// Starting the housekeeper starts its periodic pass
+			housekeeper();
+		}
+		if (minIdle > initialConnections) {
+			scheduleFill();
+		}
 	}
 
 	/**
@@ -61,121 +311,1412 @@ public class ConnectionPoolImpl implements ConnectionPool {
 	private void createInitialConnections(int initialConnections)
 			throws SQLException {
 		for (int i = 0; i < initialConnections; i++) {
-			Connection con = connectionFactory.createConnection();
-			freeConnections.addElement(con);
+			totalConnections.incrementAndGet();
+			publish(register(openConnection(), PoolEntry.STATE_FREE));
+		}
+	}
+
+	/**
+	 * Open the initial connections on <concurrency> background threads.
+	 * 
+	 * All their slots are reserved up front, so clients using the pool in the
+	 * meantime cannot push it over <maxConnections>. Each connection is
+	 * handed to a waiting client or made free as soon as it is open.
+	 * 
+	 * @return a future that completes when every connection is open, or
+	 *         exceptionally with the first failure
+	 */
+	private CompletableFuture<Void> warmUp(int initialConnections,
+			int concurrency) {
+		if (initialConnections == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(concurrency, initialConnections),
+				daemonThreads("ConnectionPool warmup"));
+		totalConnections.addAndGet(initialConnections);
+
+		CompletableFuture<?>[] tasks = new CompletableFuture<?>[initialConnections];
+		for (int i = 0; i < initialConnections; i++) {
+			tasks[i] = CompletableFuture.runAsync(new Runnable() {
+				public void run() {
+					try {
+						requite(register(openConnection(),
+								PoolEntry.STATE_RESERVED));
+					} catch (SQLException e) {
+						throw new CompletionException(e);
+					}
+				}
+			}, executor);
+		}
+		executor.shutdown();
+		return CompletableFuture.allOf(tasks);
+	}
+
+	/**
+	 * Block the constructor until warm-up has finished. If it failed, close
+	 * whatever was opened and report the failure.
+	 */
+	private void awaitWarmup() throws SQLException {
+		try {
+			ready.join();
+		} catch (CompletionException e) {
+			closeAllConnections();
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw e;
 		}
 	}
 
+	/**
+	 * Get a future that completes once the initial connections have been
+	 * opened.
+	 * 
+	 * With asynchronous warm-up the constructor returns before that, and
+	 * callers that need a fully warmed pool can wait on this future. It
+	 * completes exceptionally if any initial connection could not be opened.
+	 * Otherwise it is already complete when the constructor returns.
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<Void> getReadyFuture() {
+		return ready;
+	}
+
 	/**
 	 * Retrieve or create connections as needed.
 	 * 
 	 * Always prefer reusing existing connections, but create new connections if necessary.
 	 * 
+	 * Fails immediately if the maximum pool size has been reached.
+	 * 
 	 * @see com.manuzak.connectionpool.ConnectionPool#getConnection()
 	 */
-	public synchronized Connection getConnection() throws SQLException {
+	public Connection getConnection() throws SQLException {
+		return getConnection(0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Retrieve or create connections as needed, waiting up to <timeout> for a
+	 * connection to be released if the maximum pool size has been reached.
+	 * 
+	 * @see com.manuzak.connectionpool.ConnectionPool#getConnection(long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public Connection getConnection(long timeout, TimeUnit unit)
+			throws SQLException {
 
-		if (!freeConnections.isEmpty()) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		PoolEntry entry = takeUsableEntry();
+		if (entry != null) {
 			// There are available connections in the pool.
+			return lend(entry);
+		}
 
-			// Extract the last element from the free connection pool
-			int index = freeConnections.size() - 1;
-			Connection con = freeConnections.remove(index);
+		if (!reserveSlot()) {
+			if (timeout <= 0) {
+				// There are no available connections and the maximum pool size has been reached.
+				throw new SQLException("The maximum connection pool size (" + this.maxConnections + ") has been reached.");
+			}
 
-			// If the connection is closed (timeout, DB node failure), get
-			// another connection.
-			if (con.isClosed()) {
-				return getConnection();
+			entry = awaitEntry(deadline, timeout, unit);
+			if (entry != null) {
+				return lend(entry);
 			}
+			// A slot has been freed and reserved while waiting.
+		}
 
-			// The connection is available. Add it to the busy vector and return
-			// it to the client.
-			busyConnections.addElement(con);
-			return con;
+		// There are not available connections, but the pool can accommodate
+		// more new connections.
+
+		// Get a new connection from the factory, register it as busy
+		// and return it to the client
+		if (minIdle > 0) {
+			scheduleFill();
 		}
-		else if (getPoolSize() < maxConnections) {
-			// There are not available connections, but the pool can accommodate
-			// more new connections.
+		return lend(register(openConnection(), PoolEntry.STATE_IN_USE));
+	}
 
-			// Get a new connection from the factory, add it to the busy vector
-			// and return it to the client
-			Connection con = connectionFactory.createConnection();
-			busyConnections.addElement(con);
-			return con;
+	/**
+	 * Hand a claimed entry's connection to the client, wrapped in a handle
+	 * whose close() releases it back to the pool.
+	 * 
+	 * With leak detection or abandon reclamation enabled, the time of the
+	 * borrow is recorded, along with the borrower's stack trace for one in
+	 * every <leakTraceSampling> borrows.
+	 */
+	private Connection lend(PoolEntry entry) {
+		if (leakDetectionNanos > 0 || abandonNanos > 0) {
+			entry.borrowTrace = leakTraceSampling > 0
+					&& ThreadLocalRandom.current().nextInt(leakTraceSampling) == 0 ? new Exception(
+					"Connection borrowed here") : null;
+			entry.leakReported = false;
+			entry.borrowedAt = System.nanoTime();
+		}
+		return new PooledConnection(this, entry);
+	}
+
+	/**
+	 * Retrieve or create a connection without blocking the calling thread.
+	 * 
+	 * The future is completed straight away if a free connection has been
+	 * used recently enough to skip validation. Anything that may block, i.e.
+	 * validating, dropping or opening connections, happens on a background
+	 * thread. If the pool is saturated, the future waits, holding no thread,
+	 * until a connection is released or a slot freed. Either way it fails
+	 * with a SQLTimeoutException once <timeout> has passed. A timeout of 0
+	 * fails if the pool is saturated, and like getConnection() waits for the
+	 * factory as long as it takes otherwise.
+	 * 
+	 * Whoever completes the future runs its dependent stages, so stages that
+	 * do real work should be attached with one of the ...Async() methods.
+	 * 
+	 * @see com.manuzak.connectionpool.ConnectionPool#getConnectionAsync(long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public CompletableFuture<Connection> getConnectionAsync(
+			final long timeout, TimeUnit unit) {
+		final CompletableFuture<Connection> future = new CompletableFuture<Connection>();
+
+		PoolEntry entry = takeFreshEntry();
+		if (entry != null) {
+			future.complete(lend(entry));
+			return future;
 		}
-		else {
-			// There are no available connections and the maximum pool size has been reached.
-			
-			throw new SQLException("The maximum connection pool size (" + this.maxConnections + ") has been reached.");
+		if (timeout > 0) {
+			expireAfter(future, timeout, unit);
 		}
+		runOnOpener(new Runnable() {
+			public void run() {
+				acquireFor(future, timeout);
+			}
+		});
+		return future;
 	}
 
-	/*
-	 * Add a released connection back to the free pool or dispose of it, as necessary.
+	/**
+	 * Take a free entry if it needs no check before it is lent out, i.e. it
+	 * has been used within the validation skip window and is not past its
+	 * maximum lifetime. Any other entry is left for takeUsableEntry().
+	 */
+	private PoolEntry takeFreshEntry() {
+		PoolEntry entry = takeFreeEntry();
+		if (entry == null) {
+			return null;
+		}
+		long now = System.nanoTime();
+		if (now - entry.lastAccessed < validationSkipNanos
+				&& !entry.isExpired(now)) {
+			return entry;
+		}
+		putBack(entry);
+		return null;
+	}
+
+	/**
+	 * Serve a getConnectionAsync() call on one of the opener threads: lend a
+	 * free connection if a usable one is left, open one if the pool has room,
+	 * or queue <future> for the next connection released or slot freed.
+	 */
+	private void acquireFor(final CompletableFuture<Connection> future,
+			long timeout) {
+		if (future.isDone()) {
+			// Timed out or cancelled while queued for this thread
+			return;
+		}
+		PoolEntry entry = takeUsableEntry();
+		if (entry != null) {
+			if (!complete(future, entry)) {
+				requite(entry);
+			}
+			return;
+		}
+		if (reserveSlot()) {
+			open(future);
+			return;
+		}
+		if (timeout <= 0) {
+			future.completeExceptionally(new SQLException("The maximum connection pool size (" + this.maxConnections + ") has been reached."));
+			return;
+		}
+
+		asyncWaiters.offer(future);
+		future.whenComplete(new BiConsumer<Connection, Throwable>() {
+			public void accept(Connection con, Throwable failure) {
+				if (failure != null) {
+					// Timed out or cancelled, do not leave it to pile up
+					asyncWaiters.remove(future);
+				}
+			}
+		});
+
+		// A connection or slot may have been freed before the future was
+		// queued, without anyone noticing it.
+		entry = takeUsableEntry();
+		if (entry != null) {
+			if (complete(future, entry)) {
+				asyncWaiters.remove(future);
+			} else {
+				requite(entry);
+			}
+		} else {
+			openForAsyncWaiter();
+		}
+	}
+
+	/**
+	 * Fail <future> with a SQLTimeoutException once <timeout> has passed,
+	 * unless it has completed by then.
 	 * 
-	 * Always recycle connections if possible.  However, if the released connection is close, do not add it back to the free pool.
+	 * The timeouts run on their own timer thread rather than the
+	 * housekeeper, which may be busy for a while validating, opening or
+	 * closing connections.
+	 */
+	private void expireAfter(final CompletableFuture<Connection> future,
+			final long timeout, final TimeUnit unit) {
+		final ScheduledFuture<?> expiry = timer().schedule(new Runnable() {
+			public void run() {
+				String message = "Timed out after " + unit.toMillis(timeout)
+						+ " ms waiting for a connection";
+				if (asyncWaiters.remove(future)) {
+					message += "; the maximum connection pool size ("
+							+ maxConnections + ") has been reached";
+				}
+				future.completeExceptionally(new SQLTimeoutException(message
+						+ "."));
+			}
+		}, timeout, unit);
+		future.whenComplete(new BiConsumer<Connection, Throwable>() {
+			public void accept(Connection con, Throwable failure) {
+				expiry.cancel(false);
+			}
+		});
+	}
+
+	/**
+	 * Complete a waiting future with a claimed entry's connection.
 	 * 
-	 * @see com.manuzak.connectionpool.ConnectionPool#releaseConnection(java.sql.
-	 * Connection)
+	 * @return false if the future had already completed (timed out or been
+	 *         cancelled), in which case the entry is reserved again for the
+	 *         caller to pass on
 	 */
-	public synchronized void releaseConnection(Connection connection) throws SQLException {
-		
-		// This connection is no longer in use, so regardless of it's state, remove it from the busy pool.
-		busyConnections.removeElement(connection);
-		
-		try {
-			if (!connection.isClosed()) {
-				// The connection is available for reuse, return it to the free pool.
-				freeConnections.addElement(connection);
+	private boolean complete(CompletableFuture<Connection> future,
+			PoolEntry entry) {
+		if (future.complete(lend(entry))) {
+			return true;
+		}
+		entry.borrowedAt = 0;
+		entry.reserve();
+		return false;
+	}
+
+	/**
+	 * Open a connection in an already reserved slot on one of the opener
+	 * threads and complete <future> with it.
+	 */
+	private void openFor(final CompletableFuture<Connection> future) {
+		runOnOpener(new Runnable() {
+			public void run() {
+				open(future);
 			}
+		});
+	}
+
+	/**
+	 * Open a connection in an already reserved slot and complete <future>
+	 * with it. If the future completes some other way in the meantime, e.g.
+	 * because it timed out, the new connection goes to the next waiting
+	 * client or the free pool instead.
+	 */
+	private void open(CompletableFuture<Connection> future) {
+		PoolEntry entry;
+		try {
+			entry = register(openConnection(), PoolEntry.STATE_IN_USE);
 		} catch (SQLException e) {
-			// No need to alert the client.  They explicitly asked to no longer use this connection.
+			future.completeExceptionally(e);
+			return;
+		}
+		if (!complete(future, entry)) {
+			requite(entry);
 		}
 	}
 
 	/**
-	 * Get the total (e.g. free and busy connections) size of the pool.
+	 * Run a task on one of the opener threads.
+	 */
+	private void runOnOpener(Runnable task) {
+		while (true) {
+			try {
+				opener().execute(task);
+				return;
+			} catch (RejectedExecutionException e) {
+				// Shut down by closeAllConnections() in the meantime, the
+				// next call starts a new one
+			}
+		}
+	}
+
+	/**
+	 * If a future is waiting and the pool has room, open a connection for the
+	 * oldest one.
+	 */
+	private void openForAsyncWaiter() {
+		CompletableFuture<Connection> future;
+		while ((future = asyncWaiters.peek()) != null) {
+			if (!future.isDone()) {
+				if (!reserveSlot()) {
+					return;
+				}
+				if (asyncWaiters.remove(future)) {
+					openFor(future);
+					return;
+				}
+				// Served by a releasing thread in the meantime
+				totalConnections.decrementAndGet();
+			} else {
+				asyncWaiters.remove(future);
+			}
+		}
+	}
+
+	/**
+	 * Borrow <count> connections, all or nothing.
 	 * 
-	 * @return
+	 * Batches are gathered one at a time, in the order they arrive. A batch
+	 * takes whatever is free, then opens or waits for the rest like
+	 * getConnection() would. If the deadline passes first, the connections
+	 * it had gathered are released again, so a batch that cannot be served
+	 * does not keep others from running.
+	 * 
+	 * @see com.manuzak.connectionpool.ConnectionPool#getConnections(int, long,
+	 * java.util.concurrent.TimeUnit)
 	 */
-	public synchronized int getPoolSize() {
+	public List<Connection> getConnections(int count, long timeout,
+			TimeUnit unit) throws SQLException {
+		if (count < 1 || count > maxConnections) {
+			throw new SQLException("Cannot borrow " + count
+					+ " connections from a pool of at most " + maxConnections + ".");
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			if (!batchLock.tryLock(Math.max(0, timeout), unit)) {
+				throw new SQLTimeoutException("Timed out after "
+						+ unit.toMillis(timeout) + " ms waiting for another batch of connections to be borrowed.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}
 
-		int totalSize = freeConnections.size() + busyConnections.size();
-		return totalSize;
+		List<Connection> borrowed = new ArrayList<Connection>(count);
+		try {
+			while (borrowed.size() < count) {
+				long remaining = deadline - System.nanoTime();
+				borrowed.add(getConnection(Math.max(0, remaining),
+						TimeUnit.NANOSECONDS));
+			}
+			return borrowed;
+		} catch (SQLException e) {
+			releasePartialBatch(borrowed, e);
+			throw e;
+		} catch (RuntimeException e) {
+			releasePartialBatch(borrowed, e);
+			throw e;
+		} finally {
+			batchLock.unlock();
+		}
 	}
 
 	/**
-	 * Close all connections, regardless of their state.
+	 * Give back the connections a batch had gathered before <failure>. If
+	 * that fails too, the release failure is attached to <failure> rather
+	 * than replacing it, so the caller still learns why the batch failed.
+	 */
+	private void releasePartialBatch(List<Connection> borrowed,
+			Exception failure) {
+		try {
+			releaseConnections(borrowed);
+		} catch (SQLException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Release each of the connections. If any release fails, the rest are
+	 * still released and the first failure is thrown afterwards.
 	 * 
-	 * Consumers do not have to call this when they are done with the pool.  However, it's polite to give clients a way to clean up the objects this class has created on their behalf.
-	 *
+	 * @see com.manuzak.connectionpool.ConnectionPool#releaseConnections(java.util.Collection)
 	 */
-	public synchronized void closeAllConnections() {
-		// Close each connection from the free and busy vectors, then empty the vector objects.
-		
-		closeConnections(freeConnections);
-		freeConnections.clear();
+	public void releaseConnections(Collection<? extends Connection> cons)
+			throws SQLException {
+		SQLException failure = null;
+		for (Connection con : cons) {
+			try {
+				releaseConnection(con);
+			} catch (SQLException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
 
-		closeConnections(busyConnections);
-		busyConnections.clear();
+	/**
+	 * Create the pool's record of a newly opened connection.
+	 * 
+	 * With a maximum lifetime, each connection's expiry is brought forward by
+	 * a random amount of up to <maxLifetimeJitter>, so that connections opened
+	 * at the same moment are retired at different moments.
+	 */
+	private PoolEntry register(Connection con, int state) {
+		PoolEntry entry = new PoolEntry(con, state);
+		if (statementCacheSize > 0) {
+			entry.statements = new StatementCache(statementCacheSize);
+		}
+		if (maxLifetimeNanos > 0) {
+			long jitter = maxLifetimeJitterNanos > 0 ? ThreadLocalRandom
+					.current().nextLong(maxLifetimeJitterNanos + 1) : 0;
+			entry.expiresAt = System.nanoTime() + maxLifetimeNanos - jitter;
+			entry.expires = true;
+		}
+		connections.put(entry.key, entry);
+		if (housekeepingPeriod > 0 && housekeeper.get() == null) {
+			// In use again after closeAllConnections(), which stopped the
+			// housekeeper
+			housekeeper();
+		}
+		return entry;
 	}
 
 	/**
-	 * Explicitly close connections so the objects can be garbage collected.
+	 * Take a free connection that is still alive.
+	 * 
+	 * A connection released within the last <validationSkipWindow> is trusted
+	 * and handed out as is, which is the common case for a busy pool. Older
+	 * ones are validated first.
 	 * 
+	 * At most <validationBudget> connections are validated. If the budget runs
+	 * out, the free connections are probably stale (e.g. after a failover),
+	 * so the next one is put back unchecked and the rest of the free list is
+	 * left to the housekeeper. The caller then falls back to opening a new
+	 * connection in one of the slots the dead connections have freed.
+	 * 
+	 * @return the claimed entry, now in use, or null if none is free or the
+	 *         budget ran out
 	 */
-	private void closeConnections(Vector<Connection> connections) {
-		
-		try {
-			for (Connection con : connections) {
-				// Close each connection, if necessary
-				if (!con.isClosed()) {
-					con.close();
+	private PoolEntry takeUsableEntry() {
+		return takeUsableEntry(false);
+	}
+
+	/**
+	 * Like takeUsableEntry(), for a caller that may itself be registered as a
+	 * waiter (<waiting>), so that slots freed by dropping dead connections
+	 * are not offered to it.
+	 */
+	private PoolEntry takeUsableEntry(boolean waiting) {
+
+		int budget = validationBudget;
+		PoolEntry entry;
+		while ((entry = takeFreeEntry()) != null) {
+			long now = System.nanoTime();
+			if (entry.isExpired(now)) {
+				// Past its maximum lifetime, retire it
+				discard(entry, waiting);
+				continue;
+			}
+
+			if (now - entry.lastAccessed < validationSkipNanos) {
+				// Recently used, no need to ask the database
+				return entry;
+			}
+
+			if (budget-- == 0) {
+				putBack(entry);
+				scheduleValidation();
+				return null;
+			}
+
+			// If the connection is dead (timeout, DB node failure), drop it
+			// and try the next one.
+			if (!isAlive(entry.connection)) {
+				discard(entry, waiting);
+				continue;
+			}
+
+			// The connection is available and now marked busy.
+			entry.lastAccessed = now;
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Return an entry the calling thread has just taken, without checking or
+	 * handing it over.
+	 */
+	private void putBack(PoolEntry entry) {
+		if (entry.reserve() && entry.free()) {
+			publish(entry);
+		}
+	}
+
+	/**
+	 * Have the housekeeper check every free connection, unless such a check is
+	 * already queued.
+	 */
+	private void scheduleValidation() {
+		if (validationScheduled.compareAndSet(false, true)) {
+			housekeeper().execute(new Runnable() {
+				public void run() {
+					validationScheduled.set(false);
+					validateFreeConnections();
 				}
+			});
+		}
+	}
+
+	/**
+	 * Check each free connection in turn. Dead ones are dropped, healthy ones
+	 * go back to the free pool or to a waiting client.
+	 */
+	private void validateFreeConnections() {
+		for (PoolEntry entry : connections.values()) {
+			if (entry.reserveFree()) {
+				validate(entry);
+			}
+		}
+	}
+
+	/**
+	 * Run the periodic pass every <housekeepingPeriod> milliseconds on a newly
+	 * started housekeeper.
+	 */
+	private void startHousekeeping(ScheduledExecutorService executor) {
+		executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				housekeep();
+			}
+		}, housekeepingPeriod, housekeepingPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Periodic pass over the pool's connections.
+	 * 
+	 * Free connections that have been idle for <idleTimeout> are closed, down
+	 * to <minIdle>, so that a pool that grew during a spike shrinks again
+	 * afterwards.
+	 * 
+	 * Free connections that have been idle for <keepaliveTime> are validated.
+	 * This catches connections the server or a firewall has half-closed before
+	 * a borrower gets them, and the round trip keeps the rest from being
+	 * dropped for inactivity.
+	 * 
+	 * Free connections past their maximum lifetime are retired. Busy ones are
+	 * retired when they are released.
+	 * 
+	 * Finally the pool is topped up to <minIdle> free connections.
+	 * 
+	 * Connections held by a client for longer than <leakDetectionThreshold>
+	 * are reported as possible leaks, and those held for longer than
+	 * <abandonTimeout> are taken back by force.
+	 */
+	private void housekeep() {
+		long now = System.nanoTime();
+
+		if (leakDetectionNanos > 0 || abandonNanos > 0) {
+			checkLentConnections(now);
+		}
+
+		if (maxLifetimeNanos > 0) {
+			for (PoolEntry entry : connections.values()) {
+				if (entry.isExpired(now) && entry.reserveFree()) {
+					discard(entry);
+				}
+			}
+		}
+
+		if (idleTimeoutNanos > 0) {
+			evictIdleConnections(now);
+		}
+
+		if (keepaliveNanos > 0) {
+			for (PoolEntry entry : connections.values()) {
+				if (now - entry.lastAccessed >= keepaliveNanos
+						&& entry.reserveFree()) {
+					validate(entry);
+				}
+			}
+		}
+
+		if (minIdle > 0) {
+			fillPool();
+		}
+	}
+
+	/**
+	 * Look at each connection a client is holding. Those lent out for longer
+	 * than <abandonTimeout> are reclaimed, and those lent out for longer than
+	 * <leakDetectionThreshold> are reported once.
+	 */
+	private void checkLentConnections(long now) {
+		for (PoolEntry entry : connections.values()) {
+			long borrowedAt = entry.borrowedAt;
+			if (borrowedAt == 0 || !entry.isInUse()) {
+				continue;
+			}
+			long held = now - borrowedAt;
+
+			if (abandonNanos > 0 && held >= abandonNanos) {
+				reclaim(entry, borrowedAt, held);
+			} else if (leakDetectionNanos > 0 && held >= leakDetectionNanos
+					&& !entry.leakReported && entry.borrowedAt == borrowedAt) {
+				// Checking <borrowedAt> again skips an entry that has been
+				// released and borrowed again since it was first read.
+				entry.leakReported = true;
+				logLentConnection(
+						entry,
+						held,
+						"Connection {0} has been in use for {1} ms, which exceeds the leak detection threshold; it may have leaked.");
+			}
+		}
+	}
+
+	/**
+	 * Take an abandoned connection away from its client: close it and free
+	 * its slot for other borrowers. The client's later calls on it fail, and
+	 * its release is ignored.
+	 * 
+	 * @param borrowedAt
+	 *            when the borrow being reclaimed started
+	 */
+	private void reclaim(PoolEntry entry, long borrowedAt, long held) {
+		if (!entry.reserve()) {
+			// Released in the meantime
+			return;
+		}
+		if (entry.borrowedAt != borrowedAt) {
+			// Released and borrowed again in the meantime, give it back to
+			// its new client. Should that client release it during this
+			// short window, the release is lost and the connection is
+			// reclaimed once it is past <abandonTimeout> again.
+			entry.acceptHandoff();
+			return;
+		}
+
+		logLentConnection(
+				entry,
+				held,
+				"Connection {0} has been in use for {1} ms, which exceeds the abandon timeout; closing it and freeing its slot.");
+		discard(entry);
+	}
+
+	/**
+	 * Log a warning about a connection that has been lent out for too long,
+	 * with the stack trace of the borrower if one was recorded.
+	 */
+	private void logLentConnection(PoolEntry entry, long held, String message) {
+		LogRecord record = new LogRecord(Level.WARNING, message);
+		record.setParameters(new Object[] { entry.connection,
+				TimeUnit.NANOSECONDS.toMillis(held) });
+		record.setThrown(entry.borrowTrace);
+		record.setLoggerName(LOGGER.getName());
+		LOGGER.log(record);
+	}
+
+	/**
+	 * Have the housekeeper top up the free connections, unless that is
+	 * already queued.
+	 */
+	private void scheduleFill() {
+		if (fillScheduled.compareAndSet(false, true)) {
+			housekeeper().execute(new Runnable() {
+				public void run() {
+					fillScheduled.set(false);
+					fillPool();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Open connections until there are <minIdle> free ones or the pool is
+	 * full, so that borrowers find a spare connection instead of paying for
+	 * the handshake themselves. New connections go to a waiting client first.
+	 */
+	private void fillPool() {
+		int idle = 0;
+		for (PoolEntry entry : connections.values()) {
+			if (entry.isFree()) {
+				idle++;
+			}
+		}
+
+		while (idle < minIdle && reserveSlot()) {
+			try {
+				requite(register(openConnection(), PoolEntry.STATE_RESERVED));
+				idle++;
+			} catch (SQLException e) {
+				// The database is not accepting connections right now. The
+				// next housekeeping pass will try again.
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Close free connections idle for longer than <idleTimeout>, keeping at
+	 * least <minIdle> free connections.
+	 */
+	private void evictIdleConnections(long now) {
+		int surplus = -minIdle;
+		for (PoolEntry entry : connections.values()) {
+			if (entry.isFree()) {
+				surplus++;
+			}
+		}
+
+		for (PoolEntry entry : connections.values()) {
+			if (surplus <= 0) {
+				return;
+			}
+			if (now - entry.lastUsed >= idleTimeoutNanos
+					&& entry.reserveFree()) {
+				discard(entry);
+				surplus--;
+			}
+		}
+	}
+
+	/**
+	 * Validate an entry reserved by the housekeeper, then either return it to
+	 * the pool or drop it.
+	 */
+	private void validate(PoolEntry entry) {
+		if (isAlive(entry.connection)) {
+			entry.lastAccessed = System.nanoTime();
+			requite(entry);
+		} else {
+			discard(entry);
+		}
+	}
+
+	/**
+	 * Ask the database whether a connection still works, with
+	 * <connectionTestQuery> if one is configured or isValid() otherwise.
+	 */
+	private boolean isAlive(Connection con) {
+		try {
+			if (connectionTestQuery == null) {
+				return con.isValid(validationTimeout);
+			}
+
+			Statement statement = con.createStatement();
+			try {
+				statement.setQueryTimeout(validationTimeout);
+				statement.execute(connectionTestQuery);
+			} finally {
+				statement.close();
+			}
+			// Do not leave the test query's transaction open
+			if (!con.getAutoCommit()) {
+				con.rollback();
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Get the executor that opens connections for futures, starting it if
+	 * necessary.
+	 */
+	private ExecutorService opener() {
+		ThreadPoolExecutor executor;
+		while ((executor = opener.get()) == null) {
+			ThreadPoolExecutor created = new ThreadPoolExecutor(maxConnections,
+					maxConnections, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					daemonThreads("ConnectionPool opener"));
+			created.allowCoreThreadTimeOut(true);
+			if (opener.compareAndSet(null, created)) {
+				return created;
+			}
+			created.shutdown();
+		}
+		return executor;
+	}
+
+	/**
+	 * Get the executor that times out futures, starting it if necessary.
+	 */
+	private ScheduledExecutorService timer() {
+		ScheduledThreadPoolExecutor executor;
+		while ((executor = timer.get()) == null) {
+			ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor(
+					1, daemonThreads("ConnectionPool timer"));
+			// Drop the timeouts of futures that were served in time
+			created.setRemoveOnCancelPolicy(true);
+			created.setKeepAliveTime(60, TimeUnit.SECONDS);
+			created.allowCoreThreadTimeOut(true);
+			if (timer.compareAndSet(null, created)) {
+				return created;
+			}
+			created.shutdown();
+		}
+		return executor;
+	}
+
+	/**
+	 * Get the housekeeping executor, starting it if necessary.
+	 */
+	private ScheduledExecutorService housekeeper() {
+		ScheduledThreadPoolExecutor executor;
+		while ((executor = housekeeper.get()) == null) {
+			ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor(
+					1, daemonThreads("ConnectionPool housekeeper"));
+			if (housekeeper.compareAndSet(null, created)) {
+				if (housekeepingPeriod > 0) {
+					startHousekeeping(created);
+				}
+				return created;
+			}
+			created.shutdown();
+		}
+		return executor;
+	}
+
+	/**
+	 * Wait for a connection to be handed over by a releasing thread, or for a
+	 * slot to become free.
+	 * 
+	 * The free lists and the slot count are checked again after registering
+	 * as a waiter, so that a release happening just before the registration is
+	 * not missed. The thread does not stay registered while it opens a new
+	 * connection, as releasing threads spin while waiters are registered.
+	 * 
+	 * @return the handed over entry, now in use, or null if a slot has been
+	 *         reserved for the caller
+	 * @throws SQLException
+	 *             if the deadline passes or the thread is interrupted
+	 */
+	private PoolEntry awaitEntry(long deadline, long timeout, TimeUnit unit)
+			throws SQLException {
+		waiters.incrementAndGet();
+		try {
+			while (true) {
+				PoolEntry entry = takeUsableEntry(true);
+				if (entry != null) {
+					return entry;
+				}
+				if (reserveSlot()) {
+					return null;
+				}
+
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new SQLTimeoutException("Timed out after "
+							+ unit.toMillis(timeout) + " ms waiting for a connection; the maximum connection pool size ("
+							+ this.maxConnections + ") has been reached.");
+				}
+
+				entry = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+				if (entry != null && entry != SLOT_FREED
+						&& entry.acceptHandoff()) {
+					return entry;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Claim a free connection, trying the one this thread released last
+	 * before going to the shared free list.
+	 * 
+	 * @return the claimed entry, now in use, or null if none is free
+	 */
+	private PoolEntry takeFreeEntry() {
+		PoolEntry entry;
+		PoolEntry[] cache = affinityCache();
+		if (cache != null && (entry = cache[0]) != null) {
+			cache[0] = null;
+			if (entry.borrow()) {
+				return entry;
+			}
+			// Another thread has stolen it in the meantime
+		}
+
+		// Start with this thread's home stripe, then steal from the others
+		int home = homeStripe();
+		for (int i = 0; i < freeConnections.length; i++) {
+			ConcurrentLinkedDeque<PoolEntry> stripe = freeConnections[(home + i)
+					% freeConnections.length];
+			while ((entry = stripe.pollFirst()) != null) {
+				entry.leaveFreeList();
+				if (entry.borrow()) {
+					if (minIdle > 0 && stripe.isEmpty()) {
+						// Running low on spare connections, top them up
+						// before the next borrower has to open one itself.
+						scheduleFill();
+					}
+					return entry;
+				}
+				// A stale node for an entry that was reclaimed through an
+				// affinity cache or removed from the pool.
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the calling thread's affinity cache.
+	 * 
+	 * @return null for virtual threads, which do not use one
+	 */
+	private PoolEntry[] affinityCache() {
+		if (IS_VIRTUAL != null) {
+			try {
+				if ((boolean) IS_VIRTUAL.invokeExact(Thread.currentThread())) {
+					return null;
+				}
+			} catch (Throwable e) {
+				return null;
+			}
+		}
+		return lastReleased.get();
+	}
+
+	/**
+	 * Pick the free list the calling thread prefers. Threads are spread over
+	 * the stripes by id, so a thread keeps using the same stripe.
+	 */
+	private int homeStripe() {
+		if (freeConnections.length == 1) {
+			return 0;
+		}
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32));
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % freeConnections.length;
+	}
+
+	/**
+	 * Make an entry available to borrowers.
+	 */
+	private void publish(PoolEntry entry) {
+		if (entry.enterFreeList()) {
+			freeConnections[homeStripe()].offerFirst(entry);
+		}
+	}
+
+	/**
+	 * Pass a reserved entry to the longest waiting client, or make it free if
+	 * nobody is waiting.
+	 * 
+	 * The waiter count is checked again after the entry has been published,
+	 * because a client may have registered in between. Such a client either
+	 * finds the entry on the free list itself or, if the entry can still be
+	 * reserved, gets it handed over.
+	 */
+	private void requite(PoolEntry entry) {
+		do {
+			if (handOff(entry) || handOffAsync(entry)) {
+				return;
+			}
+			if (!entry.free()) {
+				// The pool has been closed in the meantime
+				return;
+			}
+			PoolEntry[] cache = affinityCache();
+			if (cache != null) {
+				cache[0] = entry;
+			}
+			publish(entry);
+		} while ((waiters.get() > 0 || !asyncWaiters.isEmpty())
+				&& entry.reserveFree());
+	}
+
+	/**
+	 * Complete the oldest pending getConnectionAsync() future with a reserved
+	 * entry.
+	 * 
+	 * @return true if a future took the entry, or the entry has been removed
+	 *         from the pool in the meantime
+	 */
+	private boolean handOffAsync(PoolEntry entry) {
+		CompletableFuture<Connection> future;
+		while ((future = asyncWaiters.poll()) != null) {
+			if (future.isDone()) {
+				continue;
+			}
+			if (!entry.acceptHandoff()) {
+				// The pool has been closed, leave the future for a slot
+				asyncWaiters.offer(future);
+				return true;
+			}
+			if (complete(future, entry)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Offer an item to the waiting clients until one takes it or none are
+	 * left.
+	 * 
+	 * A registered client can be briefly busy checking the free lists instead
+	 * of parked on the queue, so the offer is retried while anyone is waiting,
+	 * up to <MAX_HANDOFF_SPINS> times. A client that stays busy for longer
+	 * checks the free lists and slots again before it parks, so it does not
+	 * miss what it was offered.
+	 * 
+	 * @return true if a waiting client took the item
+	 */
+	private boolean handOff(PoolEntry item) {
+		return handOff(item, false);
+	}
+
+	/**
+	 * Like handOff(PoolEntry), for a caller that may itself be registered as
+	 * a waiter (<waiting>) and must not wait for itself to take the item.
+	 */
+	private boolean handOff(PoolEntry item, boolean waiting) {
+		int self = waiting ? 1 : 0;
+		for (int spins = 0; waiters.get() > self
+				&& spins < MAX_HANDOFF_SPINS; spins++) {
+			if (handoffQueue.offer(item)) {
+				return true;
+			}
+			if ((spins & 0xff) == 0xff) {
+				LockSupport.parkNanos(10000);
+			} else {
+				Thread.yield();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tell one waiting client, if there is one, that a slot has been freed.
+	 * Failing that, open a connection for a waiting future.
+	 */
+	private void signalSlotFreed() {
+		signalSlotFreed(false);
+	}
+
+	private void signalSlotFreed(boolean waiting) {
+		if (!handOff(SLOT_FREED, waiting)) {
+			openForAsyncWaiter();
+		}
+	}
+
+	/**
+	 * Drop a connection that is no longer usable and free its slot.
+	 * 
+	 * @param entry
+	 *            an entry owned by the calling thread
+	 */
+	private void discard(PoolEntry entry) {
+		discard(entry, false);
+	}
+
+	/**
+	 * @param waiting
+	 *            whether the calling thread is registered as a waiter itself
+	 * @see #discard(PoolEntry)
+	 */
+	private void discard(PoolEntry entry, boolean waiting) {
+		if (entry.remove()) {
+			connections.remove(entry.key);
+			totalConnections.decrementAndGet();
+			closeQuietly(entry.connection);
+			signalSlotFreed(waiting);
+			if (minIdle > 0) {
+				scheduleFill();
+			}
+		}
+	}
+
+	/**
+	 * Open a new physical connection for a slot that has already been counted
+	 * in <totalConnections>.
+	 * 
+	 * No lock is held while the factory runs, so a slow handshake only delays
+	 * the thread that needs the connection. Releases, size queries and
+	 * borrowers that find a free connection carry on in the meantime. If the
+	 * factory fails, the slot is given back and a waiting client is woken so
+	 * that it can try to use it.
+	 * 
+	 * @throws SQLException
+	 */
+	private Connection openConnection() throws SQLException {
+		boolean opened = false;
+		try {
+			Connection con = connectionFactory.createConnection();
+			if (con == null) {
+				throw new SQLException("The connection factory returned no connection.");
+			}
+			opened = true;
+			return con;
+		} finally {
+			if (!opened) {
+				totalConnections.decrementAndGet();
+				signalSlotFreed();
+			}
+		}
+	}
+
+	/*
+	 * Add a released connection back to the free pool or dispose of it, as necessary.
+	 * 
+	 * Always recycle connections if possible.  However, if the released connection is close, do not add it back to the free pool.
+	 * 
+	 * Connections that were not borrowed from this pool are ignored, otherwise they would be counted against <maxConnections>.  So are handles that have already been released, and physical connections unwrapped from a handle; only the handle returns a connection to the pool.
+	 * 
+	 * Closing the handle has the same effect as releasing it.
+	 * 
+	 * Session properties the client has changed (auto-commit, transaction isolation, read-only, catalog and schema) are put back before the connection is reused, rolling back any transaction left open.  A connection whose state cannot be restored is closed instead.
+	 * 
+	 * @see com.manuzak.connectionpool.ConnectionPool#releaseConnection(java.sql.
+	 * Connection)
+	 */
+	public void releaseConnection(Connection connection) throws SQLException {
+
+		if (!(connection instanceof PooledConnection)
+				|| ((PooledConnection) connection).pool != this) {
+			return;
+		}
+
+		// Close the client's handle. This fails if it was released before.
+		PooledConnection handle = (PooledConnection) connection;
+		if (!handle.detach()) {
+			return;
+		}
+
+		// Take the connection back from the client. This fails if the pool
+		// has taken it away in the meantime, e.g. because it was abandoned.
+		PoolEntry entry = handle.entry;
+		if (!entry.reserve()) {
+			return;
+		}
+
+		if (entry.borrowedAt != 0) {
+			if (entry.leakReported) {
+				LOGGER.log(Level.INFO,
+						"Connection {0}, previously reported as a possible leak, has been released.",
+						entry.connection);
+			}
+			entry.borrowedAt = 0;
+			entry.borrowTrace = null;
+		}
+
+		if (isClosedQuietly(entry.connection)) {
+			// No need to alert the client.  They explicitly asked to no longer use this connection.
+			discard(entry);
+			return;
+		}
+
+		long now = System.nanoTime();
+		if (entry.isExpired(now)) {
+			// The connection has reached its maximum lifetime while in use,
+			// retire it now that the client is done with it.
+			discard(entry);
+			return;
+		}
+
+		try {
+			// Undo whatever session state the client has changed
+			handle.restoreState();
+		} catch (SQLException e) {
+			// The connection's state is unknown, do not lend it out again
+			discard(entry);
+			return;
+		}
+
+		entry.lastAccessed = now;
+		entry.lastUsed = now;
+
+		// The connection is available for reuse. Hand it to a waiting client,
+		// or return it to the free pool and remember it as this thread's most
+		// recently released connection.
+		requite(entry);
+	}
+
+	/**
+	 * Get the total (e.g. free and busy connections) size of the pool.
+	 * 
+	 * Connections that are still being opened by the factory are included, as
+	 * their slots are already reserved.
+	 * 
+	 * @return
+	 */
+	public int getPoolSize() {
+		return totalConnections.get();
+	}
+
+	/**
+	 * Get the number of prepareStatement() calls that reused a cached
+	 * statement.
+	 * 
+	 * @return
+	 */
+	public long getStatementCacheHits() {
+		return statementCacheHits.sum();
+	}
+
+	/**
+	 * Get the number of prepareStatement() calls that had to prepare a new
+	 * statement because none was cached. Only counted while statement caching
+	 * is enabled.
+	 * 
+	 * @return
+	 */
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.sum();
+	}
+
+	/**
+	 * Close all connections, regardless of their state.
+	 * 
+	 * Consumers do not have to call this when they are done with the pool.  However, it's polite to give clients a way to clean up the objects this class has created on their behalf.
+	 * 
+	 * The pool can still be used afterwards. Its housekeeping is stopped
+	 * along with the connections, and starts again with the first new one.
+	 * 
+	 */
+	public void closeAllConnections() {
+		// Stop background work on the connections about to be closed. A
+		// connection registered from here on starts a new housekeeper.
+		ScheduledThreadPoolExecutor executor = housekeeper.getAndSet(null);
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+
+		// Take every registered connection out of service, then close them.
+
+		Collection<Connection> closed = new ArrayList<Connection>();
+		for (PoolEntry entry : connections.values()) {
+			if (entry.remove()) {
+				connections.remove(entry.key);
+				closed.add(entry.connection);
+			}
+		}
+		for (ConcurrentLinkedDeque<PoolEntry> stripe : freeConnections) {
+			stripe.clear();
+		}
+
+		totalConnections.addAndGet(-closed.size());
+		closeConnections(closed);
+
+		// Opens already under way still complete their futures
+		ThreadPoolExecutor openerExecutor = opener.getAndSet(null);
+		if (openerExecutor != null) {
+			openerExecutor.shutdown();
+		}
+
+		// Waiting clients can now create connections of their own.
+		for (int i = 0; i < closed.size()
+				&& (waiters.get() > 0 || !asyncWaiters.isEmpty()); i++) {
+			signalSlotFreed();
+		}
+	}
+
+	/**
+	 * Claim one of the <maxConnections> slots for a connection that is about
+	 * to be created.
+	 * 
+	 * @return false if the pool is already at its maximum size
+	 */
+	private boolean reserveSlot() {
+		int total;
+		do {
+			total = totalConnections.get();
+			if (total >= maxConnections) {
+				return false;
+			}
+		} while (!totalConnections.compareAndSet(total, total + 1));
+		return true;
+	}
+
+	/**
+	 * Treat a connection whose state cannot be read as closed.
+	 */
+	private boolean isClosedQuietly(Connection con) {
+		try {
+			return con.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Close a connection that has already been removed from the pool.
+	 */
+	private void closeQuietly(Connection con) {
+		try {
+			con.close();
+		} catch (SQLException e) {
+			// The connection is being thrown away anyway.
+		}
+	}
+
+	/**
+	 * Thread factory for the pool's background threads. They are daemons, so
+	 * an application that never closes its pool can still exit.
+	 */
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Look up Thread.isVirtual().
+	 * 
+	 * @return null if the runtime has no virtual threads
+	 */
+	private static MethodHandle findIsVirtual() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Thread.class,
+					"isVirtual", MethodType.methodType(boolean.class));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Explicitly close connections so the objects can be garbage collected.
+	 * 
+	 */
+	private void closeConnections(Collection<Connection> connections) {
+
+		for (Connection con : connections) {
+			try {
+				// Close each connection, if necessary
+				if (!con.isClosed()) {
+					con.close();
+				}
+			} catch (SQLException e) {
+				// No need to raise any exceptions as the connections is no longer in use.
 			}
-		} catch (SQLException e) {
-			// No need to raise any exceptions as the connections is no longer in use.
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package com.manuzak.connectionpool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Hands out connections of a pool as a Flow.Publisher, for reactive clients.
+ * 
+ * Every subscriber gets its own stream of connections. Each one is borrowed
+ * with getConnectionAsync() only once the subscriber has requested it, and
+ * belongs to the subscriber from onNext() on, so it must be released to the
+ * pool like any other borrowed connection.
+ * 
+ * A subscription has at most one borrow outstanding, however much it has
+ * requested. Demand the pool cannot serve yet waits in the pool's own queue
+ * of async waiters, rather than in a buffer here, so a subscriber never
+ * holds more connections than it has consumed plus one.
+ * 
+ * Once a borrow completes, the connection is delivered on the publisher's
+ * executor rather than on whichever thread completed the borrow, e.g. a
+ * client releasing a connection or one of the pool's background threads.
+ * 
+ * The stream does not complete by itself. It ends when the subscriber
+ * cancels it, or with onError() when a borrow fails, e.g. because no
+ * connection became available within the timeout.
+ * 
+ */
+public class ConnectionPublisher implements Flow.Publisher<Connection> {
+	private final ConnectionPool pool;
+	private final long timeout;
+	private final TimeUnit unit;
+	private final Executor executor;
+
+	/**
+	 * Create a publisher delivering connections on the common fork/join
+	 * pool, like SubmissionPublisher does by default.
+	 * 
+	 * @param pool
+	 *            the pool to borrow connections from
+	 * @param timeout
+	 *            how long each borrow may wait for a connection before the
+	 *            stream fails, as for getConnectionAsync()
+	 * @param unit
+	 */
+	public ConnectionPublisher(ConnectionPool pool, long timeout,
+			TimeUnit unit) {
+		this(pool, timeout, unit, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool
+	 *            the pool to borrow connections from
+	 * @param timeout
+	 *            how long each borrow may wait for a connection before the
+	 *            stream fails, as for getConnectionAsync()
+	 * @param unit
+	 * @param executor
+	 *            runs the signals to subscribers that follow a completed
+	 *            borrow
+	 */
+	public ConnectionPublisher(ConnectionPool pool, long timeout,
+			TimeUnit unit, Executor executor) {
+		if (pool == null || unit == null || executor == null) {
+			throw new NullPointerException();
+		}
+		this.pool = pool;
+		this.timeout = timeout;
+		this.unit = unit;
+		this.executor = executor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * java.util.concurrent.Flow.Publisher#subscribe(java.util.concurrent.Flow
+	 * .Subscriber)
+	 */
+	public void subscribe(Flow.Subscriber<? super Connection> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		subscriber.onSubscribe(new Lease(subscriber));
+	}
+
+	/**
+	 * Subscription of one subscriber.
+	 * 
+	 * All signals to the subscriber and all changes to the pending borrow are
+	 * made in drain(), by one thread at a time: whoever finds <wip> at zero
+	 * runs the loop until no other thread has asked for another pass.
+	 */
+	private final class Lease implements Flow.Subscription {
+		private final Flow.Subscriber<? super Connection> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable failure;
+
+		/*
+		 * The borrow in progress, or completed but not yet delivered. Only
+		 * touched inside drain().
+		 */
+		private CompletableFuture<Connection> pending;
+
+		private final BiConsumer<Connection, Throwable> onBorrowed = new BiConsumer<Connection, Throwable>() {
+			public void accept(Connection con, Throwable thrown) {
+				drain();
+			}
+		};
+
+		Lease(Flow.Subscriber<? super Connection> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException(
+						"Requested a non-positive number of connections: " + n);
+			} else {
+				long current;
+				long next;
+				do {
+					current = requested.get();
+					next = current + n;
+					if (next < 0) {
+						next = Long.MAX_VALUE;
+					}
+				} while (!requested.compareAndSet(current, next));
+			}
+			drain();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			drain();
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				while (step()) {
+					// Keep going while something changed
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * Make one move towards satisfying the subscriber.
+		 * 
+		 * @return true if anything happened, so that the caller should look
+		 *         again
+		 */
+		private boolean step() {
+			if (cancelled) {
+				abandon();
+				return false;
+			}
+			if (failure != null) {
+				cancelled = true;
+				abandon();
+				subscriber.onError(failure);
+				return false;
+			}
+
+			CompletableFuture<Connection> borrow = pending;
+			if (borrow == null) {
+				if (requested.get() == 0) {
+					return false;
+				}
+				pending = pool.getConnectionAsync(timeout, unit);
+				pending.whenCompleteAsync(onBorrowed, executor);
+				return true;
+			}
+			if (!borrow.isDone()) {
+				return false;
+			}
+
+			pending = null;
+			Connection con;
+			try {
+				con = borrow.join();
+			} catch (CompletionException e) {
+				failure = e.getCause();
+				return true;
+			}
+			if (requested.get() != Long.MAX_VALUE) {
+				requested.decrementAndGet();
+			}
+			subscriber.onNext(con);
+			return true;
+		}
+
+		/**
+		 * Give up the pending borrow, releasing its connection if the pool
+		 * has already lent one.
+		 */
+		private void abandon() {
+			CompletableFuture<Connection> borrow = pending;
+			if (borrow == null) {
+				return;
+			}
+			pending = null;
+			if (borrow.cancel(false) || borrow.isCompletedExceptionally()) {
+				return;
+			}
+			try {
+				pool.releaseConnection(borrow.join());
+			} catch (SQLException e) {
+				// Nothing the subscriber could do about it any more
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.manuzak.connectionpool;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Book-keeping for a single physical connection owned by ConnectionPoolImpl.
+ * 
+ * The state decides which thread owns the connection. A borrower only gets
+ * the connection if it wins the FREE -> IN_USE transition, which is what
+ * allows the same entry to be reachable from the shared free list and from a
+ * thread's affinity cache at the same time.
+ * 
+ */
+class PoolEntry {
+	static final int STATE_FREE = 0;
+	static final int STATE_IN_USE = 1;
+	static final int STATE_RESERVED = 2;
+	static final int STATE_REMOVED = -1;
+
+	final Connection connection;
+
+	/*
+	 * Identity-based registry key, created once so that removing the entry
+	 * does not allocate.
+	 */
+	final Key key;
+
+	private final AtomicInteger state;
+
+	/*
+	 * System.nanoTime() of the last time the connection was known to be in
+	 * use or alive: when it was opened, released or validated.
+	 */
+	volatile long lastAccessed = System.nanoTime();
+
+	/*
+	 * System.nanoTime() of the last time a client had the connection: when
+	 * it was opened or released. Unlike <lastAccessed> it is not touched by
+	 * keepalive validation, so it tells how long the connection has been
+	 * idle.
+	 */
+	volatile long lastUsed = lastAccessed;
+
+	/*
+	 * System.nanoTime() after which the connection is retired, if the pool
+	 * has a maximum lifetime.
+	 */
+	long expiresAt;
+	boolean expires;
+
+	/*
+	 * Prepared statements kept open for reuse, or null if the pool does not
+	 * cache statements.
+	 */
+	StatementCache statements;
+
+	/*
+	 * The connection's session state as it was before any client changed it,
+	 * captured the first time a client changes each property. <savedState>
+	 * holds the PooledConnection bits of the properties captured so far.
+	 */
+	int savedState;
+	boolean autoCommit;
+	int transactionIsolation;
+	boolean readOnly;
+	String catalog;
+	String schema;
+
+	/*
+	 * While the entry is lent out with leak detection enabled: the
+	 * System.nanoTime() of the borrow, the borrower's stack trace if it was
+	 * sampled, and whether the borrow has been reported as a possible leak.
+	 * <borrowedAt> is 0 while the entry is not lent out, and is written last
+	 * so that the other two are visible to whoever reads it.
+	 */
+	volatile long borrowedAt;
+	Throwable borrowTrace;
+	volatile boolean leakReported;
+
+	/*
+	 * Set while a node for this entry sits in the shared free list, so that
+	 * repeated releases through the affinity cache do not pile up duplicate
+	 * nodes.
+	 */
+	private final AtomicBoolean inFreeList = new AtomicBoolean();
+
+	PoolEntry(Connection connection, int initialState) {
+		this.connection = connection;
+		this.key = new Key(connection);
+		this.state = new AtomicInteger(initialState);
+	}
+
+	boolean isExpired(long now) {
+		return expires && now - expiresAt >= 0;
+	}
+
+	boolean isFree() {
+		return state.get() == STATE_FREE;
+	}
+
+	boolean isInUse() {
+		return state.get() == STATE_IN_USE;
+	}
+
+	/**
+	 * Claim a free entry for the calling thread.
+	 */
+	boolean borrow() {
+		return state.compareAndSet(STATE_FREE, STATE_IN_USE);
+	}
+
+	/**
+	 * Hand a borrowed entry back to the pool, which then owns it until it is
+	 * either passed to a waiting client or made FREE. Fails if the entry was
+	 * not in use, e.g. when it is released twice.
+	 */
+	boolean reserve() {
+		return state.compareAndSet(STATE_IN_USE, STATE_RESERVED);
+	}
+
+	/**
+	 * Take a free entry back into the pool's ownership, e.g. to hand it to a
+	 * client that started waiting after it was made FREE.
+	 */
+	boolean reserveFree() {
+		return state.compareAndSet(STATE_FREE, STATE_RESERVED);
+	}
+
+	/**
+	 * Make a reserved entry available to borrowers.
+	 * 
+	 * @return false if the entry was removed in the meantime
+	 */
+	boolean free() {
+		return state.compareAndSet(STATE_RESERVED, STATE_FREE);
+	}
+
+	/**
+	 * Accept a reserved entry that was handed over by a releasing thread.
+	 * 
+	 * @return false if the entry was removed in the meantime
+	 */
+	boolean acceptHandoff() {
+		return state.compareAndSet(STATE_RESERVED, STATE_IN_USE);
+	}
+
+	/**
+	 * Take the entry out of service regardless of its state.
+	 * 
+	 * @return false if it had already been removed
+	 */
+	boolean remove() {
+		return state.getAndSet(STATE_REMOVED) != STATE_REMOVED;
+	}
+
+	/**
+	 * Mark the entry as queued in the shared free list.
+	 * 
+	 * Must be called after the entry has been made FREE. A node is only added
+	 * if this returns true.
+	 */
+	boolean enterFreeList() {
+		return inFreeList.compareAndSet(false, true);
+	}
+
+	/**
+	 * Note that the entry's node has been taken off the shared free list.
+	 * 
+	 * Must be called before trying to borrow the entry, so that a concurrent
+	 * release either sees the flag cleared and queues a new node, or has
+	 * already made the entry FREE for this borrower.
+	 */
+	void leaveFreeList() {
+		inFreeList.set(false);
+	}
+
+	/**
+	 * Registry key that compares connections by identity.
+	 * 
+	 * Drivers are free to override equals() and hashCode() on their
+	 * connections (or wrap them in objects that do), so two distinct physical
+	 * connections must never be confused for one another by the pool.
+	 */
+	static final class Key {
+		private final Connection connection;
+		private final int hash;
+
+		Key(Connection connection) {
+			this.connection = connection;
+			this.hash = System.identityHashCode(connection);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof Key
+					&& ((Key) other).connection == connection;
+		}
+	}
+}
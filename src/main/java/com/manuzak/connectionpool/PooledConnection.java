@@ -0,0 +1,506 @@
+package com.manuzak.connectionpool;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The client's handle on a pooled connection for the duration of one borrow.
+ * 
+ * Calls are passed straight to the physical connection, except close(),
+ * which releases the connection to the pool instead of closing it. This
+ * makes try-with-resources blocks and frameworks that close their
+ * connections work with the pool without costing a new connection each time.
+ * 
+ * A new handle is created for every borrow and is closed for good once
+ * released, so a client that holds on to it cannot reach the physical
+ * connection after it has been lent to somebody else.
+ * 
+ * The handle also records which session properties the client changes, so
+ * that only those are restored on release. A borrow that changes nothing
+ * costs nothing to reset.
+ * 
+ */
+final class PooledConnection implements Connection {
+	private static final String CLOSED_MESSAGE = "The connection has been returned to the pool.";
+	private static final AtomicIntegerFieldUpdater<PooledConnection> CLOSED = AtomicIntegerFieldUpdater
+			.newUpdater(PooledConnection.class, "closed");
+
+	/*
+	 * Session properties that can be restored on release
+	 */
+	static final int AUTO_COMMIT = 1;
+	static final int TRANSACTION_ISOLATION = 2;
+	static final int READ_ONLY = 4;
+	static final int CATALOG = 8;
+	static final int SCHEMA = 16;
+
+	final ConnectionPoolImpl pool;
+	final PoolEntry entry;
+	private final Connection connection;
+	private volatile int closed;
+
+	/*
+	 * Properties changed during this borrow, and the auto-commit mode the
+	 * client last set
+	 */
+	private int dirty;
+	private boolean autoCommit;
+
+	PooledConnection(ConnectionPoolImpl pool, PoolEntry entry) {
+		this.pool = pool;
+		this.entry = entry;
+		this.connection = entry.connection;
+	}
+
+	/**
+	 * Close the handle, so that it can no longer be used or released.
+	 * 
+	 * @return false if it had already been closed
+	 */
+	boolean detach() {
+		return CLOSED.compareAndSet(this, 0, 1);
+	}
+
+	/**
+	 * Fail if the handle has been closed.
+	 */
+	void checkOpen() throws SQLException {
+		if (closed != 0) {
+			throw new SQLException(CLOSED_MESSAGE);
+		}
+	}
+
+	/**
+	 * Get the physical connection, unless the handle has been closed.
+	 */
+	private Connection delegate() throws SQLException {
+		checkOpen();
+		return connection;
+	}
+
+	/**
+	 * Prepare a statement, reusing one from the connection's statement cache
+	 * if the pool has one.
+	 */
+	private PreparedStatement prepare(StatementCache.Key key)
+			throws SQLException {
+		Connection con = delegate();
+		StatementCache cache = entry.statements;
+		if (cache == null) {
+			return new PooledPreparedStatement(this, key.prepare(con), null);
+		}
+
+		PreparedStatement statement = cache.take(key);
+		if (statement != null) {
+			pool.statementCacheHits.increment();
+		} else {
+			pool.statementCacheMisses.increment();
+			statement = key.prepare(con);
+		}
+		return new PooledPreparedStatement(this, statement, key);
+	}
+
+	/**
+	 * Put a cached statement the client has closed back into the cache, once
+	 * its parameters, pending batch, warnings and current result set have
+	 * been cleared.
+	 * 
+	 * @return false if the statement cannot be reused and should be closed,
+	 *         e.g. because the connection has been returned to the pool in the
+	 *         meantime
+	 */
+	boolean recycle(StatementCache.Key key, PreparedStatement statement) {
+		if (closed != 0) {
+			return false;
+		}
+		try {
+			if (statement.isClosed()) {
+				return false;
+			}
+			statement.clearParameters();
+			statement.clearBatch();
+			statement.clearWarnings();
+			ResultSet resultSet = statement.getResultSet();
+			if (resultSet != null) {
+				resultSet.close();
+			}
+		} catch (SQLException e) {
+			return false;
+		}
+		entry.statements.offer(key, statement);
+		return true;
+	}
+
+	/**
+	 * Note that the client is about to change <property>, saving the
+	 * connection's original value first if that has not been done yet.
+	 */
+	private void markDirty(int property) throws SQLException {
+		dirty |= property;
+		if ((entry.savedState & property) != 0) {
+			return;
+		}
+		switch (property) {
+		case AUTO_COMMIT:
+			entry.autoCommit = connection.getAutoCommit();
+			break;
+		case TRANSACTION_ISOLATION:
+			entry.transactionIsolation = connection.getTransactionIsolation();
+			break;
+		case READ_ONLY:
+			entry.readOnly = connection.isReadOnly();
+			break;
+		case CATALOG:
+			entry.catalog = connection.getCatalog();
+			break;
+		case SCHEMA:
+			entry.schema = connection.getSchema();
+			break;
+		}
+		entry.savedState |= property;
+	}
+
+	/**
+	 * Put back the session properties the client has changed, once the
+	 * handle has been detached.
+	 * 
+	 * A transaction the client left open is rolled back before auto-commit is
+	 * switched back on, as that would otherwise commit it.
+	 * 
+	 * @throws SQLException
+	 *             if the state could not be restored, in which case the
+	 *             connection should not be lent out again
+	 */
+	void restoreState() throws SQLException {
+		if (dirty == 0) {
+			return;
+		}
+		if ((dirty & AUTO_COMMIT) != 0) {
+			if (!autoCommit) {
+				connection.rollback();
+			}
+			if (autoCommit != entry.autoCommit) {
+				connection.setAutoCommit(entry.autoCommit);
+			}
+		}
+		if ((dirty & TRANSACTION_ISOLATION) != 0) {
+			connection.setTransactionIsolation(entry.transactionIsolation);
+		}
+		if ((dirty & READ_ONLY) != 0) {
+			connection.setReadOnly(entry.readOnly);
+		}
+		if ((dirty & CATALOG) != 0) {
+			connection.setCatalog(entry.catalog);
+		}
+		if ((dirty & SCHEMA) != 0) {
+			connection.setSchema(entry.schema);
+		}
+		dirty = 0;
+	}
+
+	/**
+	 * Return the connection to the pool. Closing the handle again has no
+	 * effect.
+	 */
+	public void close() throws SQLException {
+		pool.releaseConnection(this);
+	}
+
+	public boolean isClosed() throws SQLException {
+		return closed != 0 || connection.isClosed();
+	}
+
+	public boolean isValid(int timeout) throws SQLException {
+		return closed == 0 && connection.isValid(timeout);
+	}
+
+	public void abort(Executor executor) throws SQLException {
+		delegate().abort(executor);
+	}
+
+	public Statement createStatement() throws SQLException {
+		return new PooledStatement(this, delegate().createStatement());
+	}
+
+	public Statement createStatement(int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return new PooledStatement(this, delegate().createStatement(
+				resultSetType, resultSetConcurrency));
+	}
+
+	public Statement createStatement(int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability)
+			throws SQLException {
+		return new PooledStatement(this, delegate().createStatement(
+				resultSetType, resultSetConcurrency, resultSetHoldability));
+	}
+
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return prepare(new StatementCache.Key(sql, StatementCache.Key.DEFAULT,
+				StatementCache.Key.DEFAULT, StatementCache.Key.DEFAULT,
+				StatementCache.Key.DEFAULT));
+	}
+
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return prepare(new StatementCache.Key(sql, resultSetType,
+				resultSetConcurrency, StatementCache.Key.DEFAULT,
+				StatementCache.Key.DEFAULT));
+	}
+
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability)
+			throws SQLException {
+		return prepare(new StatementCache.Key(sql, resultSetType,
+				resultSetConcurrency, resultSetHoldability,
+				StatementCache.Key.DEFAULT));
+	}
+
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return prepare(new StatementCache.Key(sql, StatementCache.Key.DEFAULT,
+				StatementCache.Key.DEFAULT, StatementCache.Key.DEFAULT,
+				autoGeneratedKeys));
+	}
+
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
+			throws SQLException {
+		return new PooledPreparedStatement(this, delegate().prepareStatement(
+				sql, columnIndexes), null);
+	}
+
+	public PreparedStatement prepareStatement(String sql, String[] columnNames)
+			throws SQLException {
+		return new PooledPreparedStatement(this, delegate().prepareStatement(
+				sql, columnNames), null);
+	}
+
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return new PooledCallableStatement(this, delegate().prepareCall(sql));
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return new PooledCallableStatement(this, delegate().prepareCall(sql,
+				resultSetType, resultSetConcurrency));
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability)
+			throws SQLException {
+		return new PooledCallableStatement(this, delegate().prepareCall(sql,
+				resultSetType, resultSetConcurrency, resultSetHoldability));
+	}
+
+	public String nativeSQL(String sql) throws SQLException {
+		return delegate().nativeSQL(sql);
+	}
+
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		Connection con = delegate();
+		markDirty(AUTO_COMMIT);
+		con.setAutoCommit(autoCommit);
+		this.autoCommit = autoCommit;
+	}
+
+	public boolean getAutoCommit() throws SQLException {
+		return delegate().getAutoCommit();
+	}
+
+	public void commit() throws SQLException {
+		delegate().commit();
+	}
+
+	public void rollback() throws SQLException {
+		delegate().rollback();
+	}
+
+	public void rollback(Savepoint savepoint) throws SQLException {
+		delegate().rollback(savepoint);
+	}
+
+	public Savepoint setSavepoint() throws SQLException {
+		return delegate().setSavepoint();
+	}
+
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return delegate().setSavepoint(name);
+	}
+
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		delegate().releaseSavepoint(savepoint);
+	}
+
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return delegate().getMetaData();
+	}
+
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		Connection con = delegate();
+		markDirty(READ_ONLY);
+		con.setReadOnly(readOnly);
+	}
+
+	public boolean isReadOnly() throws SQLException {
+		return delegate().isReadOnly();
+	}
+
+	public void setCatalog(String catalog) throws SQLException {
+		Connection con = delegate();
+		markDirty(CATALOG);
+		con.setCatalog(catalog);
+	}
+
+	public String getCatalog() throws SQLException {
+		return delegate().getCatalog();
+	}
+
+	public void setSchema(String schema) throws SQLException {
+		Connection con = delegate();
+		markDirty(SCHEMA);
+		con.setSchema(schema);
+	}
+
+	public String getSchema() throws SQLException {
+		return delegate().getSchema();
+	}
+
+	public void setTransactionIsolation(int level) throws SQLException {
+		Connection con = delegate();
+		markDirty(TRANSACTION_ISOLATION);
+		con.setTransactionIsolation(level);
+	}
+
+	public int getTransactionIsolation() throws SQLException {
+		return delegate().getTransactionIsolation();
+	}
+
+	public void setHoldability(int holdability) throws SQLException {
+		delegate().setHoldability(holdability);
+	}
+
+	public int getHoldability() throws SQLException {
+		return delegate().getHoldability();
+	}
+
+	public void setNetworkTimeout(Executor executor, int milliseconds)
+			throws SQLException {
+		delegate().setNetworkTimeout(executor, milliseconds);
+	}
+
+	public int getNetworkTimeout() throws SQLException {
+		return delegate().getNetworkTimeout();
+	}
+
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return delegate().getTypeMap();
+	}
+
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		delegate().setTypeMap(map);
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return delegate().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		delegate().clearWarnings();
+	}
+
+	public void setClientInfo(String name, String value)
+			throws SQLClientInfoException {
+		if (closed != 0) {
+			throw new SQLClientInfoException(CLOSED_MESSAGE, null);
+		}
+		connection.setClientInfo(name, value);
+	}
+
+	public void setClientInfo(Properties properties)
+			throws SQLClientInfoException {
+		if (closed != 0) {
+			throw new SQLClientInfoException(CLOSED_MESSAGE, null);
+		}
+		connection.setClientInfo(properties);
+	}
+
+	public String getClientInfo(String name) throws SQLException {
+		return delegate().getClientInfo(name);
+	}
+
+	public Properties getClientInfo() throws SQLException {
+		return delegate().getClientInfo();
+	}
+
+	public Clob createClob() throws SQLException {
+		return delegate().createClob();
+	}
+
+	public Blob createBlob() throws SQLException {
+		return delegate().createBlob();
+	}
+
+	public NClob createNClob() throws SQLException {
+		return delegate().createNClob();
+	}
+
+	public SQLXML createSQLXML() throws SQLException {
+		return delegate().createSQLXML();
+	}
+
+	public Array createArrayOf(String typeName, Object[] elements)
+			throws SQLException {
+		return delegate().createArrayOf(typeName, elements);
+	}
+
+	public Struct createStruct(String typeName, Object[] attributes)
+			throws SQLException {
+		return delegate().createStruct(typeName, attributes);
+	}
+
+	/**
+	 * Give access to the physical connection, or to a driver interface it
+	 * implements, while the handle is open. The pool still owns the
+	 * connection; it must not be closed or released directly.
+	 */
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		Connection con = delegate();
+		if (iface.isInstance(con)) {
+			return iface.cast(con);
+		}
+		return con.unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return true;
+		}
+		Connection con = delegate();
+		return iface.isInstance(con) || con.isWrapperFor(iface);
+	}
+
+	public String toString() {
+		return "Pooled " + connection;
+	}
+}
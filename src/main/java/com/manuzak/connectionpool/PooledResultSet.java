@@ -0,0 +1,932 @@
+package com.manuzak.connectionpool;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Result set of a PooledStatement, whose getStatement() returns the pooled
+ * statement rather than the driver's.
+ * 
+ * Calls that move the cursor or write rows check the connection handle
+ * first, as a driver may go to the server for them, e.g. to fetch the next
+ * batch of rows of a streaming result. A result set kept after its
+ * connection was released therefore cannot use a connection that has been
+ * lent to someone else. Reading the columns of the current row is passed
+ * straight through, since result sets are read in tight loops.
+ * 
+ */
+final class PooledResultSet implements ResultSet {
+	private final PooledStatement statement;
+	private final ResultSet resultSet;
+
+	PooledResultSet(PooledStatement statement, ResultSet resultSet) {
+		this.statement = statement;
+		this.resultSet = resultSet;
+	}
+
+	/**
+	 * Get the driver's result set, unless the connection handle has been
+	 * closed.
+	 */
+	private ResultSet delegate() throws SQLException {
+		statement.connection.checkOpen();
+		return resultSet;
+	}
+
+	public boolean next() throws SQLException {
+		return delegate().next();
+	}
+
+	public void close() throws SQLException {
+		resultSet.close();
+	}
+
+	public boolean wasNull() throws SQLException {
+		return resultSet.wasNull();
+	}
+
+	public String getString(int columnIndex) throws SQLException {
+		return resultSet.getString(columnIndex);
+	}
+
+	public boolean getBoolean(int columnIndex) throws SQLException {
+		return resultSet.getBoolean(columnIndex);
+	}
+
+	public byte getByte(int columnIndex) throws SQLException {
+		return resultSet.getByte(columnIndex);
+	}
+
+	public short getShort(int columnIndex) throws SQLException {
+		return resultSet.getShort(columnIndex);
+	}
+
+	public int getInt(int columnIndex) throws SQLException {
+		return resultSet.getInt(columnIndex);
+	}
+
+	public long getLong(int columnIndex) throws SQLException {
+		return resultSet.getLong(columnIndex);
+	}
+
+	public float getFloat(int columnIndex) throws SQLException {
+		return resultSet.getFloat(columnIndex);
+	}
+
+	public double getDouble(int columnIndex) throws SQLException {
+		return resultSet.getDouble(columnIndex);
+	}
+
+	@Deprecated
+	public BigDecimal getBigDecimal(int columnIndex, int scale)
+			throws SQLException {
+		return resultSet.getBigDecimal(columnIndex, scale);
+	}
+
+	public byte[] getBytes(int columnIndex) throws SQLException {
+		return resultSet.getBytes(columnIndex);
+	}
+
+	public Date getDate(int columnIndex) throws SQLException {
+		return resultSet.getDate(columnIndex);
+	}
+
+	public Time getTime(int columnIndex) throws SQLException {
+		return resultSet.getTime(columnIndex);
+	}
+
+	public Timestamp getTimestamp(int columnIndex)
+			throws SQLException {
+		return resultSet.getTimestamp(columnIndex);
+	}
+
+	public InputStream getAsciiStream(int columnIndex)
+			throws SQLException {
+		return resultSet.getAsciiStream(columnIndex);
+	}
+
+	@Deprecated
+	public InputStream getUnicodeStream(int columnIndex)
+			throws SQLException {
+		return resultSet.getUnicodeStream(columnIndex);
+	}
+
+	public InputStream getBinaryStream(int columnIndex)
+			throws SQLException {
+		return resultSet.getBinaryStream(columnIndex);
+	}
+
+	public String getString(String columnLabel) throws SQLException {
+		return resultSet.getString(columnLabel);
+	}
+
+	public boolean getBoolean(String columnLabel) throws SQLException {
+		return resultSet.getBoolean(columnLabel);
+	}
+
+	public byte getByte(String columnLabel) throws SQLException {
+		return resultSet.getByte(columnLabel);
+	}
+
+	public short getShort(String columnLabel) throws SQLException {
+		return resultSet.getShort(columnLabel);
+	}
+
+	public int getInt(String columnLabel) throws SQLException {
+		return resultSet.getInt(columnLabel);
+	}
+
+	public long getLong(String columnLabel) throws SQLException {
+		return resultSet.getLong(columnLabel);
+	}
+
+	public float getFloat(String columnLabel) throws SQLException {
+		return resultSet.getFloat(columnLabel);
+	}
+
+	public double getDouble(String columnLabel) throws SQLException {
+		return resultSet.getDouble(columnLabel);
+	}
+
+	@Deprecated
+	public BigDecimal getBigDecimal(String columnLabel, int scale)
+			throws SQLException {
+		return resultSet.getBigDecimal(columnLabel, scale);
+	}
+
+	public byte[] getBytes(String columnLabel) throws SQLException {
+		return resultSet.getBytes(columnLabel);
+	}
+
+	public Date getDate(String columnLabel) throws SQLException {
+		return resultSet.getDate(columnLabel);
+	}
+
+	public Time getTime(String columnLabel) throws SQLException {
+		return resultSet.getTime(columnLabel);
+	}
+
+	public Timestamp getTimestamp(String columnLabel)
+			throws SQLException {
+		return resultSet.getTimestamp(columnLabel);
+	}
+
+	public InputStream getAsciiStream(String columnLabel)
+			throws SQLException {
+		return resultSet.getAsciiStream(columnLabel);
+	}
+
+	@Deprecated
+	public InputStream getUnicodeStream(String columnLabel)
+			throws SQLException {
+		return resultSet.getUnicodeStream(columnLabel);
+	}
+
+	public InputStream getBinaryStream(String columnLabel)
+			throws SQLException {
+		return resultSet.getBinaryStream(columnLabel);
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return resultSet.getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		resultSet.clearWarnings();
+	}
+
+	public String getCursorName() throws SQLException {
+		return resultSet.getCursorName();
+	}
+
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return resultSet.getMetaData();
+	}
+
+	public Object getObject(int columnIndex) throws SQLException {
+		return resultSet.getObject(columnIndex);
+	}
+
+	public Object getObject(String columnLabel) throws SQLException {
+		return resultSet.getObject(columnLabel);
+	}
+
+	public int findColumn(String columnLabel) throws SQLException {
+		return resultSet.findColumn(columnLabel);
+	}
+
+	public Reader getCharacterStream(int columnIndex)
+			throws SQLException {
+		return resultSet.getCharacterStream(columnIndex);
+	}
+
+	public Reader getCharacterStream(String columnLabel)
+			throws SQLException {
+		return resultSet.getCharacterStream(columnLabel);
+	}
+
+	public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+		return resultSet.getBigDecimal(columnIndex);
+	}
+
+	public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+		return resultSet.getBigDecimal(columnLabel);
+	}
+
+	public boolean isBeforeFirst() throws SQLException {
+		return resultSet.isBeforeFirst();
+	}
+
+	public boolean isAfterLast() throws SQLException {
+		return resultSet.isAfterLast();
+	}
+
+	public boolean isFirst() throws SQLException {
+		return resultSet.isFirst();
+	}
+
+	public boolean isLast() throws SQLException {
+		return resultSet.isLast();
+	}
+
+	public void beforeFirst() throws SQLException {
+		delegate().beforeFirst();
+	}
+
+	public void afterLast() throws SQLException {
+		delegate().afterLast();
+	}
+
+	public boolean first() throws SQLException {
+		return delegate().first();
+	}
+
+	public boolean last() throws SQLException {
+		return delegate().last();
+	}
+
+	public int getRow() throws SQLException {
+		return resultSet.getRow();
+	}
+
+	public boolean absolute(int row) throws SQLException {
+		return delegate().absolute(row);
+	}
+
+	public boolean relative(int rows) throws SQLException {
+		return delegate().relative(rows);
+	}
+
+	public boolean previous() throws SQLException {
+		return delegate().previous();
+	}
+
+	public void setFetchDirection(int direction) throws SQLException {
+		resultSet.setFetchDirection(direction);
+	}
+
+	public int getFetchDirection() throws SQLException {
+		return resultSet.getFetchDirection();
+	}
+
+	public void setFetchSize(int rows) throws SQLException {
+		resultSet.setFetchSize(rows);
+	}
+
+	public int getFetchSize() throws SQLException {
+		return resultSet.getFetchSize();
+	}
+
+	public int getType() throws SQLException {
+		return resultSet.getType();
+	}
+
+	public int getConcurrency() throws SQLException {
+		return resultSet.getConcurrency();
+	}
+
+	public boolean rowUpdated() throws SQLException {
+		return resultSet.rowUpdated();
+	}
+
+	public boolean rowInserted() throws SQLException {
+		return resultSet.rowInserted();
+	}
+
+	public boolean rowDeleted() throws SQLException {
+		return resultSet.rowDeleted();
+	}
+
+	public void updateNull(int columnIndex) throws SQLException {
+		resultSet.updateNull(columnIndex);
+	}
+
+	public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+		resultSet.updateBoolean(columnIndex, x);
+	}
+
+	public void updateByte(int columnIndex, byte x) throws SQLException {
+		resultSet.updateByte(columnIndex, x);
+	}
+
+	public void updateShort(int columnIndex, short x) throws SQLException {
+		resultSet.updateShort(columnIndex, x);
+	}
+
+	public void updateInt(int columnIndex, int x) throws SQLException {
+		resultSet.updateInt(columnIndex, x);
+	}
+
+	public void updateLong(int columnIndex, long x) throws SQLException {
+		resultSet.updateLong(columnIndex, x);
+	}
+
+	public void updateFloat(int columnIndex, float x) throws SQLException {
+		resultSet.updateFloat(columnIndex, x);
+	}
+
+	public void updateDouble(int columnIndex, double x) throws SQLException {
+		resultSet.updateDouble(columnIndex, x);
+	}
+
+	public void updateBigDecimal(int columnIndex, BigDecimal x)
+			throws SQLException {
+		resultSet.updateBigDecimal(columnIndex, x);
+	}
+
+	public void updateString(int columnIndex, String x) throws SQLException {
+		resultSet.updateString(columnIndex, x);
+	}
+
+	public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+		resultSet.updateBytes(columnIndex, x);
+	}
+
+	public void updateDate(int columnIndex, Date x)
+			throws SQLException {
+		resultSet.updateDate(columnIndex, x);
+	}
+
+	public void updateTime(int columnIndex, Time x)
+			throws SQLException {
+		resultSet.updateTime(columnIndex, x);
+	}
+
+	public void updateTimestamp(int columnIndex, Timestamp x)
+			throws SQLException {
+		resultSet.updateTimestamp(columnIndex, x);
+	}
+
+	public void updateAsciiStream(int columnIndex, InputStream x,
+			int length) throws SQLException {
+		resultSet.updateAsciiStream(columnIndex, x, length);
+	}
+
+	public void updateBinaryStream(int columnIndex, InputStream x,
+			int length) throws SQLException {
+		resultSet.updateBinaryStream(columnIndex, x, length);
+	}
+
+	public void updateCharacterStream(int columnIndex, Reader x,
+			int length) throws SQLException {
+		resultSet.updateCharacterStream(columnIndex, x, length);
+	}
+
+	public void updateObject(int columnIndex, Object x, int scaleOrLength)
+			throws SQLException {
+		resultSet.updateObject(columnIndex, x, scaleOrLength);
+	}
+
+	public void updateObject(int columnIndex, Object x) throws SQLException {
+		resultSet.updateObject(columnIndex, x);
+	}
+
+	public void updateNull(String columnLabel) throws SQLException {
+		resultSet.updateNull(columnLabel);
+	}
+
+	public void updateBoolean(String columnLabel, boolean x)
+			throws SQLException {
+		resultSet.updateBoolean(columnLabel, x);
+	}
+
+	public void updateByte(String columnLabel, byte x) throws SQLException {
+		resultSet.updateByte(columnLabel, x);
+	}
+
+	public void updateShort(String columnLabel, short x) throws SQLException {
+		resultSet.updateShort(columnLabel, x);
+	}
+
+	public void updateInt(String columnLabel, int x) throws SQLException {
+		resultSet.updateInt(columnLabel, x);
+	}
+
+	public void updateLong(String columnLabel, long x) throws SQLException {
+		resultSet.updateLong(columnLabel, x);
+	}
+
+	public void updateFloat(String columnLabel, float x) throws SQLException {
+		resultSet.updateFloat(columnLabel, x);
+	}
+
+	public void updateDouble(String columnLabel, double x) throws SQLException {
+		resultSet.updateDouble(columnLabel, x);
+	}
+
+	public void updateBigDecimal(String columnLabel, BigDecimal x)
+			throws SQLException {
+		resultSet.updateBigDecimal(columnLabel, x);
+	}
+
+	public void updateString(String columnLabel, String x) throws SQLException {
+		resultSet.updateString(columnLabel, x);
+	}
+
+	public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+		resultSet.updateBytes(columnLabel, x);
+	}
+
+	public void updateDate(String columnLabel, Date x)
+			throws SQLException {
+		resultSet.updateDate(columnLabel, x);
+	}
+
+	public void updateTime(String columnLabel, Time x)
+			throws SQLException {
+		resultSet.updateTime(columnLabel, x);
+	}
+
+	public void updateTimestamp(String columnLabel, Timestamp x)
+			throws SQLException {
+		resultSet.updateTimestamp(columnLabel, x);
+	}
+
+	public void updateAsciiStream(String columnLabel, InputStream x,
+			int length) throws SQLException {
+		resultSet.updateAsciiStream(columnLabel, x, length);
+	}
+
+	public void updateBinaryStream(String columnLabel, InputStream x,
+			int length) throws SQLException {
+		resultSet.updateBinaryStream(columnLabel, x, length);
+	}
+
+	public void updateCharacterStream(String columnLabel, Reader reader,
+			int length) throws SQLException {
+		resultSet.updateCharacterStream(columnLabel, reader, length);
+	}
+
+	public void updateObject(String columnLabel, Object x, int scaleOrLength)
+			throws SQLException {
+		resultSet.updateObject(columnLabel, x, scaleOrLength);
+	}
+
+	public void updateObject(String columnLabel, Object x) throws SQLException {
+		resultSet.updateObject(columnLabel, x);
+	}
+
+	public void insertRow() throws SQLException {
+		delegate().insertRow();
+	}
+
+	public void updateRow() throws SQLException {
+		delegate().updateRow();
+	}
+
+	public void deleteRow() throws SQLException {
+		delegate().deleteRow();
+	}
+
+	public void refreshRow() throws SQLException {
+		delegate().refreshRow();
+	}
+
+	public void cancelRowUpdates() throws SQLException {
+		delegate().cancelRowUpdates();
+	}
+
+	public void moveToInsertRow() throws SQLException {
+		delegate().moveToInsertRow();
+	}
+
+	public void moveToCurrentRow() throws SQLException {
+		delegate().moveToCurrentRow();
+	}
+
+	public Statement getStatement() throws SQLException {
+		return statement;
+	}
+
+	public Object getObject(int columnIndex, Map<String, Class<?>> map)
+			throws SQLException {
+		return resultSet.getObject(columnIndex, map);
+	}
+
+	public Ref getRef(int columnIndex) throws SQLException {
+		return resultSet.getRef(columnIndex);
+	}
+
+	public Blob getBlob(int columnIndex) throws SQLException {
+		return resultSet.getBlob(columnIndex);
+	}
+
+	public Clob getClob(int columnIndex) throws SQLException {
+		return resultSet.getClob(columnIndex);
+	}
+
+	public Array getArray(int columnIndex) throws SQLException {
+		return resultSet.getArray(columnIndex);
+	}
+
+	public Object getObject(String columnLabel,
+			Map<String, Class<?>> map) throws SQLException {
+		return resultSet.getObject(columnLabel, map);
+	}
+
+	public Ref getRef(String columnLabel) throws SQLException {
+		return resultSet.getRef(columnLabel);
+	}
+
+	public Blob getBlob(String columnLabel) throws SQLException {
+		return resultSet.getBlob(columnLabel);
+	}
+
+	public Clob getClob(String columnLabel) throws SQLException {
+		return resultSet.getClob(columnLabel);
+	}
+
+	public Array getArray(String columnLabel) throws SQLException {
+		return resultSet.getArray(columnLabel);
+	}
+
+	public Date getDate(int columnIndex, Calendar cal)
+			throws SQLException {
+		return resultSet.getDate(columnIndex, cal);
+	}
+
+	public Date getDate(String columnLabel, Calendar cal)
+			throws SQLException {
+		return resultSet.getDate(columnLabel, cal);
+	}
+
+	public Time getTime(int columnIndex, Calendar cal)
+			throws SQLException {
+		return resultSet.getTime(columnIndex, cal);
+	}
+
+	public Time getTime(String columnLabel, Calendar cal)
+			throws SQLException {
+		return resultSet.getTime(columnLabel, cal);
+	}
+
+	public Timestamp getTimestamp(int columnIndex, Calendar cal)
+			throws SQLException {
+		return resultSet.getTimestamp(columnIndex, cal);
+	}
+
+	public Timestamp getTimestamp(String columnLabel, Calendar cal)
+			throws SQLException {
+		return resultSet.getTimestamp(columnLabel, cal);
+	}
+
+	public URL getURL(int columnIndex) throws SQLException {
+		return resultSet.getURL(columnIndex);
+	}
+
+	public URL getURL(String columnLabel) throws SQLException {
+		return resultSet.getURL(columnLabel);
+	}
+
+	public void updateRef(int columnIndex, Ref x) throws SQLException {
+		resultSet.updateRef(columnIndex, x);
+	}
+
+	public void updateRef(String columnLabel, Ref x)
+			throws SQLException {
+		resultSet.updateRef(columnLabel, x);
+	}
+
+	public void updateBlob(int columnIndex, Blob x)
+			throws SQLException {
+		resultSet.updateBlob(columnIndex, x);
+	}
+
+	public void updateBlob(String columnLabel, Blob x)
+			throws SQLException {
+		resultSet.updateBlob(columnLabel, x);
+	}
+
+	public void updateClob(int columnIndex, Clob x)
+			throws SQLException {
+		resultSet.updateClob(columnIndex, x);
+	}
+
+	public void updateClob(String columnLabel, Clob x)
+			throws SQLException {
+		resultSet.updateClob(columnLabel, x);
+	}
+
+	public void updateArray(int columnIndex, Array x)
+			throws SQLException {
+		resultSet.updateArray(columnIndex, x);
+	}
+
+	public void updateArray(String columnLabel, Array x)
+			throws SQLException {
+		resultSet.updateArray(columnLabel, x);
+	}
+
+	public RowId getRowId(int columnIndex) throws SQLException {
+		return resultSet.getRowId(columnIndex);
+	}
+
+	public RowId getRowId(String columnLabel) throws SQLException {
+		return resultSet.getRowId(columnLabel);
+	}
+
+	public void updateRowId(int columnIndex, RowId x) throws SQLException {
+		resultSet.updateRowId(columnIndex, x);
+	}
+
+	public void updateRowId(String columnLabel, RowId x) throws SQLException {
+		resultSet.updateRowId(columnLabel, x);
+	}
+
+	public int getHoldability() throws SQLException {
+		return resultSet.getHoldability();
+	}
+
+	public boolean isClosed() throws SQLException {
+		return resultSet.isClosed();
+	}
+
+	public void updateNString(int columnIndex, String nString)
+			throws SQLException {
+		resultSet.updateNString(columnIndex, nString);
+	}
+
+	public void updateNString(String columnLabel, String nString)
+			throws SQLException {
+		resultSet.updateNString(columnLabel, nString);
+	}
+
+	public void updateNClob(int columnIndex, NClob nClob) throws SQLException {
+		resultSet.updateNClob(columnIndex, nClob);
+	}
+
+	public void updateNClob(String columnLabel, NClob nClob)
+			throws SQLException {
+		resultSet.updateNClob(columnLabel, nClob);
+	}
+
+	public NClob getNClob(int columnIndex) throws SQLException {
+		return resultSet.getNClob(columnIndex);
+	}
+
+	public NClob getNClob(String columnLabel) throws SQLException {
+		return resultSet.getNClob(columnLabel);
+	}
+
+	public SQLXML getSQLXML(int columnIndex) throws SQLException {
+		return resultSet.getSQLXML(columnIndex);
+	}
+
+	public SQLXML getSQLXML(String columnLabel) throws SQLException {
+		return resultSet.getSQLXML(columnLabel);
+	}
+
+	public void updateSQLXML(int columnIndex, SQLXML xmlObject)
+			throws SQLException {
+		resultSet.updateSQLXML(columnIndex, xmlObject);
+	}
+
+	public void updateSQLXML(String columnLabel, SQLXML xmlObject)
+			throws SQLException {
+		resultSet.updateSQLXML(columnLabel, xmlObject);
+	}
+
+	public String getNString(int columnIndex) throws SQLException {
+		return resultSet.getNString(columnIndex);
+	}
+
+	public String getNString(String columnLabel) throws SQLException {
+		return resultSet.getNString(columnLabel);
+	}
+
+	public Reader getNCharacterStream(int columnIndex)
+			throws SQLException {
+		return resultSet.getNCharacterStream(columnIndex);
+	}
+
+	public Reader getNCharacterStream(String columnLabel)
+			throws SQLException {
+		return resultSet.getNCharacterStream(columnLabel);
+	}
+
+	public void updateNCharacterStream(int columnIndex, Reader x,
+			long length) throws SQLException {
+		resultSet.updateNCharacterStream(columnIndex, x, length);
+	}
+
+	public void updateNCharacterStream(String columnLabel,
+			Reader reader, long length) throws SQLException {
+		resultSet.updateNCharacterStream(columnLabel, reader, length);
+	}
+
+	public void updateAsciiStream(int columnIndex, InputStream x,
+			long length) throws SQLException {
+		resultSet.updateAsciiStream(columnIndex, x, length);
+	}
+
+	public void updateBinaryStream(int columnIndex, InputStream x,
+			long length) throws SQLException {
+		resultSet.updateBinaryStream(columnIndex, x, length);
+	}
+
+	public void updateCharacterStream(int columnIndex, Reader x,
+			long length) throws SQLException {
+		resultSet.updateCharacterStream(columnIndex, x, length);
+	}
+
+	public void updateAsciiStream(String columnLabel, InputStream x,
+			long length) throws SQLException {
+		resultSet.updateAsciiStream(columnLabel, x, length);
+	}
+
+	public void updateBinaryStream(String columnLabel, InputStream x,
+			long length) throws SQLException {
+		resultSet.updateBinaryStream(columnLabel, x, length);
+	}
+
+	public void updateCharacterStream(String columnLabel, Reader reader,
+			long length) throws SQLException {
+		resultSet.updateCharacterStream(columnLabel, reader, length);
+	}
+
+	public void updateBlob(int columnIndex, InputStream inputStream,
+			long length) throws SQLException {
+		resultSet.updateBlob(columnIndex, inputStream, length);
+	}
+
+	public void updateBlob(String columnLabel, InputStream inputStream,
+			long length) throws SQLException {
+		resultSet.updateBlob(columnLabel, inputStream, length);
+	}
+
+	public void updateClob(int columnIndex, Reader reader, long length)
+			throws SQLException {
+		resultSet.updateClob(columnIndex, reader, length);
+	}
+
+	public void updateClob(String columnLabel, Reader reader, long length)
+			throws SQLException {
+		resultSet.updateClob(columnLabel, reader, length);
+	}
+
+	public void updateNClob(int columnIndex, Reader reader, long length)
+			throws SQLException {
+		resultSet.updateNClob(columnIndex, reader, length);
+	}
+
+	public void updateNClob(String columnLabel, Reader reader, long length)
+			throws SQLException {
+		resultSet.updateNClob(columnLabel, reader, length);
+	}
+
+	public void updateNCharacterStream(int columnIndex, Reader x)
+			throws SQLException {
+		resultSet.updateNCharacterStream(columnIndex, x);
+	}
+
+	public void updateNCharacterStream(String columnLabel,
+			Reader reader) throws SQLException {
+		resultSet.updateNCharacterStream(columnLabel, reader);
+	}
+
+	public void updateAsciiStream(int columnIndex, InputStream x)
+			throws SQLException {
+		resultSet.updateAsciiStream(columnIndex, x);
+	}
+
+	public void updateBinaryStream(int columnIndex, InputStream x)
+			throws SQLException {
+		resultSet.updateBinaryStream(columnIndex, x);
+	}
+
+	public void updateCharacterStream(int columnIndex, Reader x)
+			throws SQLException {
+		resultSet.updateCharacterStream(columnIndex, x);
+	}
+
+	public void updateAsciiStream(String columnLabel, InputStream x)
+			throws SQLException {
+		resultSet.updateAsciiStream(columnLabel, x);
+	}
+
+	public void updateBinaryStream(String columnLabel, InputStream x)
+			throws SQLException {
+		resultSet.updateBinaryStream(columnLabel, x);
+	}
+
+	public void updateCharacterStream(String columnLabel, Reader reader)
+			throws SQLException {
+		resultSet.updateCharacterStream(columnLabel, reader);
+	}
+
+	public void updateBlob(int columnIndex, InputStream inputStream)
+			throws SQLException {
+		resultSet.updateBlob(columnIndex, inputStream);
+	}
+
+	public void updateBlob(String columnLabel, InputStream inputStream)
+			throws SQLException {
+		resultSet.updateBlob(columnLabel, inputStream);
+	}
+
+	public void updateClob(int columnIndex, Reader reader) throws SQLException {
+		resultSet.updateClob(columnIndex, reader);
+	}
+
+	public void updateClob(String columnLabel, Reader reader)
+			throws SQLException {
+		resultSet.updateClob(columnLabel, reader);
+	}
+
+	public void updateNClob(int columnIndex, Reader reader)
+			throws SQLException {
+		resultSet.updateNClob(columnIndex, reader);
+	}
+
+	public void updateNClob(String columnLabel, Reader reader)
+			throws SQLException {
+		resultSet.updateNClob(columnLabel, reader);
+	}
+
+	public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+		return resultSet.getObject(columnIndex, type);
+	}
+
+	public <T> T getObject(String columnLabel, Class<T> type)
+			throws SQLException {
+		return resultSet.getObject(columnLabel, type);
+	}
+
+	public void updateObject(int columnIndex, Object x, SQLType targetSqlType,
+			int scaleOrLength) throws SQLException {
+		resultSet.updateObject(columnIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	public void updateObject(String columnLabel, Object x,
+			SQLType targetSqlType, int scaleOrLength) throws SQLException {
+		resultSet.updateObject(columnLabel, x, targetSqlType, scaleOrLength);
+	}
+
+	public void updateObject(int columnIndex, Object x, SQLType targetSqlType)
+			throws SQLException {
+		resultSet.updateObject(columnIndex, x, targetSqlType);
+	}
+
+	public void updateObject(String columnLabel, Object x,
+			SQLType targetSqlType) throws SQLException {
+		resultSet.updateObject(columnLabel, x, targetSqlType);
+	}
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		if (iface.isInstance(resultSet)) {
+			return iface.cast(resultSet);
+		}
+		return resultSet.unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(resultSet)
+				|| resultSet.isWrapperFor(iface);
+	}
+
+	public String toString() {
+		return "Pooled " + resultSet;
+	}
+}
@@ -0,0 +1,298 @@
+package com.manuzak.connectionpool;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * Statement created through a PooledConnection.
+ * 
+ * Calls are passed straight to the driver's statement once the connection
+ * handle has been checked to still be open, so that a statement kept after
+ * its connection was released cannot reach a connection that has been lent
+ * to someone else. getConnection() returns the handle rather than the
+ * physical connection, and result sets are wrapped so that their
+ * getStatement() does the same.
+ * 
+ */
+class PooledStatement implements Statement {
+	final PooledConnection connection;
+	private final Statement statement;
+	boolean closed;
+
+	/*
+	 * Whether the client has changed any of the statement's settings, such as
+	 * its maximum rows or query timeout
+	 */
+	boolean configured;
+
+	PooledStatement(PooledConnection connection, Statement statement) {
+		this.connection = connection;
+		this.statement = statement;
+	}
+
+	/**
+	 * Fail if the statement has been closed or its connection returned to
+	 * the pool.
+	 */
+	void checkOpen() throws SQLException {
+		connection.checkOpen();
+		if (closed) {
+			throw new SQLException("The statement has been closed.");
+		}
+	}
+
+	private Statement delegate() throws SQLException {
+		checkOpen();
+		return statement;
+	}
+
+	/**
+	 * Get the driver's statement for a call that changes one of its settings.
+	 */
+	private Statement configure() throws SQLException {
+		Statement statement = delegate();
+		configured = true;
+		return statement;
+	}
+
+	ResultSet wrap(ResultSet resultSet) {
+		return resultSet == null ? null : new PooledResultSet(this, resultSet);
+	}
+
+	public ResultSet executeQuery(String sql) throws SQLException {
+		return wrap(delegate().executeQuery(sql));
+	}
+
+	public int executeUpdate(String sql) throws SQLException {
+		return delegate().executeUpdate(sql);
+	}
+
+	public void close() throws SQLException {
+		closed = true;
+		statement.close();
+	}
+
+	public int getMaxFieldSize() throws SQLException {
+		return delegate().getMaxFieldSize();
+	}
+
+	public void setMaxFieldSize(int max) throws SQLException {
+		configure().setMaxFieldSize(max);
+	}
+
+	public int getMaxRows() throws SQLException {
+		return delegate().getMaxRows();
+	}
+
+	public void setMaxRows(int max) throws SQLException {
+		configure().setMaxRows(max);
+	}
+
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		configure().setEscapeProcessing(enable);
+	}
+
+	public int getQueryTimeout() throws SQLException {
+		return delegate().getQueryTimeout();
+	}
+
+	public void setQueryTimeout(int seconds) throws SQLException {
+		configure().setQueryTimeout(seconds);
+	}
+
+	public void cancel() throws SQLException {
+		delegate().cancel();
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return delegate().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		delegate().clearWarnings();
+	}
+
+	public void setCursorName(String name) throws SQLException {
+		configure().setCursorName(name);
+	}
+
+	public boolean execute(String sql) throws SQLException {
+		return delegate().execute(sql);
+	}
+
+	public ResultSet getResultSet() throws SQLException {
+		return wrap(delegate().getResultSet());
+	}
+
+	public int getUpdateCount() throws SQLException {
+		return delegate().getUpdateCount();
+	}
+
+	public boolean getMoreResults() throws SQLException {
+		return delegate().getMoreResults();
+	}
+
+	public void setFetchDirection(int direction) throws SQLException {
+		configure().setFetchDirection(direction);
+	}
+
+	public int getFetchDirection() throws SQLException {
+		return delegate().getFetchDirection();
+	}
+
+	public void setFetchSize(int rows) throws SQLException {
+		configure().setFetchSize(rows);
+	}
+
+	public int getFetchSize() throws SQLException {
+		return delegate().getFetchSize();
+	}
+
+	public int getResultSetConcurrency() throws SQLException {
+		return delegate().getResultSetConcurrency();
+	}
+
+	public int getResultSetType() throws SQLException {
+		return delegate().getResultSetType();
+	}
+
+	public void addBatch(String sql) throws SQLException {
+		delegate().addBatch(sql);
+	}
+
+	public void clearBatch() throws SQLException {
+		delegate().clearBatch();
+	}
+
+	public int[] executeBatch() throws SQLException {
+		return delegate().executeBatch();
+	}
+
+	public Connection getConnection() throws SQLException {
+		connection.checkOpen();
+		return connection;
+	}
+
+	public boolean getMoreResults(int current) throws SQLException {
+		return delegate().getMoreResults(current);
+	}
+
+	public ResultSet getGeneratedKeys() throws SQLException {
+		return wrap(delegate().getGeneratedKeys());
+	}
+
+	public int executeUpdate(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return delegate().executeUpdate(sql, autoGeneratedKeys);
+	}
+
+	public int executeUpdate(String sql, int[] columnIndexes)
+			throws SQLException {
+		return delegate().executeUpdate(sql, columnIndexes);
+	}
+
+	public int executeUpdate(String sql, String[] columnNames)
+			throws SQLException {
+		return delegate().executeUpdate(sql, columnNames);
+	}
+
+	public boolean execute(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return delegate().execute(sql, autoGeneratedKeys);
+	}
+
+	public boolean execute(String sql, int[] columnIndexes)
+			throws SQLException {
+		return delegate().execute(sql, columnIndexes);
+	}
+
+	public boolean execute(String sql, String[] columnNames)
+			throws SQLException {
+		return delegate().execute(sql, columnNames);
+	}
+
+	public int getResultSetHoldability() throws SQLException {
+		return delegate().getResultSetHoldability();
+	}
+
+	public boolean isClosed() throws SQLException {
+		return closed || statement.isClosed();
+	}
+
+	public void setPoolable(boolean poolable) throws SQLException {
+		configure().setPoolable(poolable);
+	}
+
+	public boolean isPoolable() throws SQLException {
+		return delegate().isPoolable();
+	}
+
+	public void closeOnCompletion() throws SQLException {
+		configure().closeOnCompletion();
+	}
+
+	public boolean isCloseOnCompletion() throws SQLException {
+		return delegate().isCloseOnCompletion();
+	}
+
+	public long getLargeUpdateCount() throws SQLException {
+		return delegate().getLargeUpdateCount();
+	}
+
+	public void setLargeMaxRows(long max) throws SQLException {
+		configure().setLargeMaxRows(max);
+	}
+
+	public long getLargeMaxRows() throws SQLException {
+		return delegate().getLargeMaxRows();
+	}
+
+	public long[] executeLargeBatch() throws SQLException {
+		return delegate().executeLargeBatch();
+	}
+
+	public long executeLargeUpdate(String sql) throws SQLException {
+		return delegate().executeLargeUpdate(sql);
+	}
+
+	public long executeLargeUpdate(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return delegate().executeLargeUpdate(sql, autoGeneratedKeys);
+	}
+
+	public long executeLargeUpdate(String sql, int[] columnIndexes)
+			throws SQLException {
+		return delegate().executeLargeUpdate(sql, columnIndexes);
+	}
+
+	public long executeLargeUpdate(String sql, String[] columnNames)
+			throws SQLException {
+		return delegate().executeLargeUpdate(sql, columnNames);
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		Statement target = delegate();
+		if (iface.isInstance(target)) {
+			return iface.cast(target);
+		}
+		return target.unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return true;
+		}
+		Statement target = delegate();
+		return iface.isInstance(target) || target.isWrapperFor(iface);
+	}
+
+	public String toString() {
+		return "Pooled " + statement;
+	}
+}
@@ -0,0 +1,131 @@
+package com.manuzak.connectionpool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of one physical connection that clients have closed,
+ * kept open so that preparing the same SQL again does not cost a round trip.
+ * 
+ * A statement is taken out of the cache while a client uses it and put back
+ * when the client closes it, so each statement has at most one user. The
+ * cache holds at most <capacity> statements; the one closed longest ago is
+ * closed for good to make room.
+ * 
+ * Like the rest of a connection's state, the cache is only used by the
+ * client the connection is currently lent to, so it is not synchronized.
+ * 
+ */
+final class StatementCache {
+	private final int capacity;
+	private final LinkedHashMap<Key, PreparedStatement> statements;
+
+	StatementCache(int capacity) {
+		this.capacity = capacity;
+		this.statements = new LinkedHashMap<Key, PreparedStatement>();
+	}
+
+	/**
+	 * Take a statement for <key> out of the cache.
+	 * 
+	 * @return null if none is cached
+	 */
+	PreparedStatement take(Key key) {
+		return statements.remove(key);
+	}
+
+	/**
+	 * Put a statement a client has closed into the cache, as the most recently
+	 * used one. If a statement with the same key is already cached, or the
+	 * cache is full, the statement displaced is closed.
+	 */
+	void offer(Key key, PreparedStatement statement) {
+		PreparedStatement displaced = statements.remove(key);
+		statements.put(key, statement);
+		if (displaced != null) {
+			closeQuietly(displaced);
+		}
+
+		if (statements.size() > capacity) {
+			Iterator<Map.Entry<Key, PreparedStatement>> eldest = statements
+					.entrySet().iterator();
+			closeQuietly(eldest.next().getValue());
+			eldest.remove();
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			// The connection may already be broken, nothing left to free
+		}
+	}
+
+	/**
+	 * SQL text and result set options a statement was prepared with.
+	 * 
+	 * Options that were not passed to prepareStatement() are left at
+	 * DEFAULT, so that statements prepared through different overloads are
+	 * not mixed up.
+	 */
+	static final class Key {
+		static final int DEFAULT = Integer.MIN_VALUE;
+
+		private final String sql;
+		private final int resultSetType;
+		private final int resultSetConcurrency;
+		private final int resultSetHoldability;
+		private final int autoGeneratedKeys;
+
+		Key(String sql, int resultSetType, int resultSetConcurrency,
+				int resultSetHoldability, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.resultSetType = resultSetType;
+			this.resultSetConcurrency = resultSetConcurrency;
+			this.resultSetHoldability = resultSetHoldability;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		/**
+		 * Prepare a new statement for this key on the physical connection.
+		 */
+		PreparedStatement prepare(Connection con) throws SQLException {
+			if (autoGeneratedKeys != DEFAULT) {
+				return con.prepareStatement(sql, autoGeneratedKeys);
+			}
+			if (resultSetHoldability != DEFAULT) {
+				return con.prepareStatement(sql, resultSetType,
+						resultSetConcurrency, resultSetHoldability);
+			}
+			if (resultSetType != DEFAULT) {
+				return con.prepareStatement(sql, resultSetType,
+						resultSetConcurrency);
+			}
+			return con.prepareStatement(sql);
+		}
+
+		public int hashCode() {
+			int hash = sql.hashCode();
+			hash = 31 * hash + resultSetType;
+			hash = 31 * hash + resultSetConcurrency;
+			hash = 31 * hash + resultSetHoldability;
+			return 31 * hash + autoGeneratedKeys;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return sql.equals(key.sql) && resultSetType == key.resultSetType
+					&& resultSetConcurrency == key.resultSetConcurrency
+					&& resultSetHoldability == key.resultSetHoldability
+					&& autoGeneratedKeys == key.autoGeneratedKeys;
+		}
+	}
+}
@@ -1,14 +1,47 @@
 package com.manuzak.ConnectionPool;
 
+import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import com.manuzak.ConnectionPool.mock.MockConnection;
 import com.manuzak.ConnectionPool.mock.MockConnectionFactory;
+import com.manuzak.ConnectionPool.mock.MockPreparedStatement;
+import com.manuzak.ConnectionPool.mock.MockResultSet;
+import com.manuzak.connectionpool.ConnectionFactory;
+import com.manuzak.connectionpool.ConnectionPoolConfig;
 import com.manuzak.connectionpool.ConnectionPoolImpl;
+import com.manuzak.connectionpool.ConnectionPublisher;
 
 /**
  * @author Jonathan Manuzak
@@ -148,6 +181,22 @@ public class ConnectionPoolTest extends TestCase {
 		}
 	}
 
+	/**
+	 * A borrow has to be allowed to check at least one free connection, so a
+	 * validation budget below 1 is rejected like any other invalid setting.
+	 */
+	public void testPoolInitialization_InvalidValidationBudget() {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(initialSize,
+				maxSize);
+		config.setValidationBudget(0);
+		try {
+			new ConnectionPoolImpl(mockConnectionFactory, config);
+			fail("Connection pool should not have been created");
+		} catch (Exception e) {
+			assertEquals("Invalid parameters", e.getMessage());
+		}
+	}
+
 	/**
 	 * The connection pool needs to be able to grow beyond it's <initialSize> up
 	 * to the <maxSize>. However, it should first consume all of the existing
@@ -261,7 +310,7 @@ public class ConnectionPoolTest extends TestCase {
 	 * connections when they are released.
 	 * 
 	 * Create a new pool of <initialSize> 1. Acquire the existing connection,
-	 * close it, release it and verify that the connection pool has decreased by
+	 * close the physical connection, release it and verify that the connection pool has decreased by
 	 * 1 (i.e. the connection was destroyed and not added back to the pool).
 	 * 
 	 * @throws Exception
@@ -276,7 +325,7 @@ public class ConnectionPoolTest extends TestCase {
 
 		// Acquire the pre-created connection, close it and release it.
 		Connection con = connectionPool.getConnection();
-		con.close();
+		physical(con).close();
 		connectionPool.releaseConnection(con);
 
 		// The connection pool should now be empty since we closed the only
@@ -341,8 +390,8 @@ public class ConnectionPoolTest extends TestCase {
 	}
 
 	/**
-	 * Create a new pool with an initial size, explicitly close some connections
-	 * without releasing them and ensure the pool is emptied cleanly.
+	 * Create a new pool with an initial size, explicitly close some physical
+	 * connections without releasing them and ensure the pool is emptied cleanly.
 	 * 
 	 * @throws Exception
 	 */
@@ -357,7 +406,7 @@ public class ConnectionPoolTest extends TestCase {
 		int closeCount = Math.round(initialSize / 2);
 		for (int i = 0; i < closeCount; i++) {
 			Connection con = connectionPool.getConnection();
-			con.close();
+			physical(con).close();
 		}
 
 		// Explicitly close all of the connections
@@ -365,4 +414,1566 @@ public class ConnectionPoolTest extends TestCase {
 		assertEquals(connectionPool.getPoolSize(), 0);
 	}
 
+	/**
+	 * Several threads repeatedly borrow and release connections at the same
+	 * time. The pool must never hand out more than <maxSize> connections and
+	 * must end up with every connection back in the free pool.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ConcurrentBorrowRelease() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, initialSize, maxSize);
+		borrowAndReleaseConcurrently(connectionPool);
+	}
+
+	/**
+	 * Same as testPoolUsage_ConcurrentBorrowRelease(), but with the free
+	 * connections split over several stripes. <maxSize> must still hold
+	 * across all of them.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_StripedConcurrentBorrowRelease() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(initialSize,
+				maxSize);
+		config.setStripes(4);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+		borrowAndReleaseConcurrently(connectionPool);
+	}
+
+	/**
+	 * A connection released to one stripe must be found by a thread whose
+	 * home stripe is empty, rather than growing the pool.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_StripedStealing() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(0, maxSize);
+		config.setStripes(8);
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		// Borrow and release connections from several threads, so they end
+		// up spread over different stripes
+		for (int t = 0; t < 8; t++) {
+			Thread worker = new Thread() {
+				public void run() {
+					try {
+						connectionPool.releaseConnection(connectionPool
+								.getConnection());
+					} catch (SQLException e) {
+						// Verified through the factory count below
+					}
+				}
+			};
+			worker.start();
+			worker.join(5000);
+		}
+		assertEquals(1, mockConnectionFactory.getCount());
+
+		// This thread has never released anything, yet it should reuse the
+		// existing connection
+		connectionPool.getConnection();
+		assertEquals(1, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * Have several threads repeatedly borrow and release connections from the
+	 * given pool and verify that <maxSize> is never exceeded.
+	 */
+	private void borrowAndReleaseConcurrently(
+			final ConnectionPoolImpl connectionPool) throws Exception {
+		final int threadCount = maxSize * 2;
+		final int iterations = 1000;
+		final AtomicInteger inUse = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(threadCount);
+
+		for (int t = 0; t < threadCount; t++) {
+			new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < iterations; i++) {
+							Connection con;
+							try {
+								con = connectionPool.getConnection();
+							} catch (SQLException e) {
+								// The pool is saturated, try again
+								continue;
+							}
+							if (inUse.incrementAndGet() > maxSize) {
+								failure.compareAndSet(null, new AssertionError(
+										"More than <maxSize> connections in use"));
+							}
+							inUse.decrementAndGet();
+							connectionPool.releaseConnection(con);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		done.await();
+
+		assertNull(failure.get());
+		assertTrue(mockConnectionFactory.getCount() <= maxSize);
+		assertEquals(mockConnectionFactory.getCount(),
+				connectionPool.getPoolSize());
+	}
+
+	/**
+	 * When the pool is saturated, getConnection(timeout, unit) should wait for
+	 * another client to release a connection instead of failing immediately.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_WaitForRelease() throws Exception {
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+		final Connection con = connectionPool.getConnection();
+
+		// Release the only connection from another thread after a short delay
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+					connectionPool.releaseConnection(con);
+				} catch (Exception e) {
+					// The waiting side will time out and fail the test
+				}
+			}
+		}.start();
+
+		// The released connection should be handed to the waiting client
+		MockConnection physical = physical(con);
+		assertSame(physical, physical(connectionPool.getConnection(5,
+				TimeUnit.SECONDS)));
+		assertEquals(1, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * If nobody releases a connection before the deadline, the waiting client
+	 * should get a SQLTimeoutException.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_WaitTimeout() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+		connectionPool.getConnection();
+
+		long start = System.nanoTime();
+		try {
+			connectionPool.getConnection(100, TimeUnit.MILLISECONDS);
+			fail("Connection should not have been acquired.");
+		} catch (SQLTimeoutException e) {
+			// Verify that the client actually waited for the timeout
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+					.toNanos(100));
+		}
+	}
+
+	/**
+	 * A slow connection factory must not stall the rest of the pool. While one
+	 * client waits for a new connection to be opened, other clients should
+	 * still be able to release and reuse connections and query the pool size.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_SlowFactoryDoesNotBlockPool() throws Exception {
+		final CountDownLatch factoryEntered = new CountDownLatch(1);
+		final CountDownLatch factoryUnblocked = new CountDownLatch(1);
+
+		// Block inside the factory for every connection after the first
+		ConnectionFactory slowFactory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				if (mockConnectionFactory.getCount() > 0) {
+					factoryEntered.countDown();
+					try {
+						factoryUnblocked.await();
+					} catch (InterruptedException e) {
+						throw new SQLException(e);
+					}
+				}
+				return mockConnectionFactory.createConnection();
+			}
+		};
+
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				slowFactory, 1, 2);
+		Connection con = connectionPool.getConnection();
+
+		// Start a client that needs a second, slow connection
+		Thread slowClient = new Thread() {
+			public void run() {
+				try {
+					connectionPool.releaseConnection(connectionPool
+							.getConnection());
+				} catch (SQLException e) {
+					// Verified through the pool size below
+				}
+			}
+		};
+		slowClient.start();
+		assertTrue(factoryEntered.await(5, TimeUnit.SECONDS));
+
+		// The reserved slot is visible, and the pool still serves other clients
+		assertEquals(2, connectionPool.getPoolSize());
+		MockConnection physical = physical(con);
+		connectionPool.releaseConnection(con);
+		assertSame(physical, physical(connectionPool.getConnection()));
+
+		factoryUnblocked.countDown();
+		slowClient.join(5000);
+		assertEquals(2, connectionPool.getPoolSize());
+		assertEquals(2, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * If the factory fails to open a connection, its reserved slot must be
+	 * given back to the pool.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_FactoryFailureFreesSlot() throws Exception {
+		ConnectionFactory failingFactory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				throw new SQLException("Database unavailable");
+			}
+		};
+
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				failingFactory, 0, 1);
+		try {
+			connectionPool.getConnection();
+			fail("Connection should not have been acquired.");
+		} catch (SQLException e) {
+			assertEquals("Database unavailable", e.getMessage());
+		}
+		assertEquals(0, connectionPool.getPoolSize());
+	}
+
+	/**
+	 * A thread should get back the connection it released last, even when
+	 * another thread has released a connection after it.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ThreadAffinity() throws Exception {
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 2, 2);
+		final Connection first = connectionPool.getConnection();
+		final Connection second = connectionPool.getConnection();
+		MockConnection firstPhysical = physical(first);
+		MockConnection secondPhysical = physical(second);
+		final AtomicReference<Connection> reclaimed = new AtomicReference<Connection>();
+		final CountDownLatch released = new CountDownLatch(1);
+		final CountDownLatch otherReleased = new CountDownLatch(1);
+
+		Thread worker = new Thread() {
+			public void run() {
+				try {
+					connectionPool.releaseConnection(first);
+					released.countDown();
+					otherReleased.await();
+					reclaimed.set(connectionPool.getConnection());
+				} catch (Exception e) {
+					// Verified through <reclaimed> below
+				}
+			}
+		};
+		worker.start();
+
+		// Release <second> after <first>, so it is at the top of the free list
+		released.await();
+		connectionPool.releaseConnection(second);
+		otherReleased.countDown();
+		worker.join(5000);
+
+		assertSame(firstPhysical, physical(reclaimed.get()));
+		assertSame(secondPhysical, physical(connectionPool.getConnection()));
+	}
+
+	/**
+	 * Some drivers override equals() on their connections. The pool must still
+	 * track each physical connection separately.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ConnectionsTrackedByIdentity() throws Exception {
+		// Every connection from this factory claims to be equal to every other
+		ConnectionFactory equalFactory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				mockConnectionFactory.createConnection();
+				return new MockConnection() {
+					public boolean equals(Object other) {
+						return other instanceof MockConnection;
+					}
+
+					public int hashCode() {
+						return 0;
+					}
+				};
+			}
+		};
+
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				equalFactory, 0, 2);
+		Connection first = connectionPool.getConnection();
+		Connection second = connectionPool.getConnection();
+		connectionPool.releaseConnection(first);
+		connectionPool.releaseConnection(second);
+
+		// Both connections should be back in the pool and handed out again
+		assertEquals(2, connectionPool.getPoolSize());
+		Connection a = connectionPool.getConnection();
+		Connection b = connectionPool.getConnection();
+		assertNotSame(physical(a), physical(b));
+		assertEquals(2, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * A released connection should go straight to a client that is already
+	 * waiting, rather than back to the free pool where the releasing thread
+	 * (or any other) could grab it first.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_HandOffToWaiter() throws Exception {
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+		Connection con = connectionPool.getConnection();
+		MockConnection physical = physical(con);
+		final AtomicReference<Connection> received = new AtomicReference<Connection>();
+
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					received.set(connectionPool.getConnection(5,
+							TimeUnit.SECONDS));
+				} catch (SQLException e) {
+					// Verified through <received> below
+				}
+			}
+		};
+		waiter.start();
+
+		// Give the waiter time to park, then release and try to barge in
+		Thread.sleep(200);
+		connectionPool.releaseConnection(con);
+		try {
+			connectionPool.getConnection();
+			fail("The released connection should have gone to the waiter.");
+		} catch (SQLException e) {
+			// Expected, the only connection belongs to the waiter now
+		}
+
+		waiter.join(5000);
+		assertSame(physical, physical(received.get()));
+	}
+
+	/**
+	 * A waiting client that finds a dead free connection drops it, which frees
+	 * a slot. Signalling that slot must not make the client wait for itself,
+	 * or a releasing thread waiting for it, past its deadline.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_WaiterDiscardsDeadConnection() throws Exception {
+		// Every third validation of a connection fails
+		ConnectionFactory flakyFactory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				mockConnectionFactory.createConnection();
+				return new MockConnection() {
+					public boolean isValid(int timeout) throws SQLException {
+						return super.isValid(timeout)
+								&& ThreadLocalRandom.current().nextInt(3) != 0;
+					}
+				};
+			}
+		};
+		ConnectionPoolConfig config = new ConnectionPoolConfig(0, 1);
+		config.setValidationSkipWindow(0);
+		config.setValidationBudget(1);
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				flakyFactory, config);
+
+		final long stopAt = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(2000);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(2);
+		Runnable client = new Runnable() {
+			public void run() {
+				try {
+					while (System.nanoTime() < stopAt) {
+						Connection con;
+						try {
+							con = connectionPool.getConnection(200,
+									TimeUnit.MILLISECONDS);
+						} catch (SQLTimeoutException e) {
+							continue;
+						}
+						connectionPool.releaseConnection(con);
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		for (int i = 0; i < 2; i++) {
+			Thread thread = new Thread(client);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertNull(failure.get());
+	}
+
+	/**
+	 * Many more threads than connections wait on the pool at the same time.
+	 * Virtual threads are used where the runtime has them, since that is the
+	 * case the pool must not pin carrier threads for. Without them the test
+	 * makes do with fewer platform threads. Every thread must eventually get
+	 * a connection, and <maxSize> must never be exceeded.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ManyWaitingThreads() throws Exception {
+		final int maxConnections = 50;
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 0, maxConnections);
+
+		final int threadCount = hasVirtualThreads() ? 10000 : 500;
+		final AtomicInteger inUse = new AtomicInteger();
+		final AtomicInteger served = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(threadCount);
+
+		Runnable client = new Runnable() {
+			public void run() {
+				try {
+					Connection con = connectionPool.getConnection(60,
+							TimeUnit.SECONDS);
+					if (inUse.incrementAndGet() > maxConnections) {
+						failure.compareAndSet(null, new AssertionError(
+								"More than <maxConnections> connections in use"));
+					}
+					Thread.yield();
+					inUse.decrementAndGet();
+					connectionPool.releaseConnection(con);
+					served.incrementAndGet();
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		for (int i = 0; i < threadCount; i++) {
+			startVirtualThread(client);
+		}
+
+		assertTrue(done.await(120, TimeUnit.SECONDS));
+		assertNull(failure.get());
+		assertEquals(threadCount, served.get());
+		assertTrue(mockConnectionFactory.getCount() <= maxConnections);
+	}
+
+	/**
+	 * Whether the runtime supports virtual threads.
+	 */
+	private static boolean hasVirtualThreads() {
+		try {
+			Thread.class.getMethod("startVirtualThread", Runnable.class);
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Start a virtual thread if the runtime supports them, or a platform thread
+	 * otherwise.
+	 */
+	private static Thread startVirtualThread(Runnable task) throws Exception {
+		try {
+			Method start = Thread.class.getMethod("startVirtualThread",
+					Runnable.class);
+			return (Thread) start.invoke(null, task);
+		} catch (NoSuchMethodException e) {
+			Thread thread = new Thread(task);
+			thread.start();
+			return thread;
+		}
+	}
+
+	/**
+	 * After a failover every free connection may be dead. A single borrow
+	 * should only check a few of them, open a new connection, and leave the
+	 * rest to the background check.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_StaleConnectionsValidatedInBackground()
+			throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(maxSize, maxSize);
+		config.setValidationBudget(3);
+		config.setValidationSkipWindow(0);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		// Borrow and release every connection, then kill them all
+		ArrayList<Connection> connections = new ArrayList<Connection>(maxSize);
+		ArrayList<Connection> physicals = new ArrayList<Connection>(maxSize);
+		for (int i = 0; i < maxSize; i++) {
+			Connection con = connectionPool.getConnection();
+			connections.add(con);
+			physicals.add(physical(con));
+		}
+		for (Connection con : connections) {
+			connectionPool.releaseConnection(con);
+		}
+		for (Connection con : physicals) {
+			con.close();
+		}
+
+		// The borrower drops at most <validationBudget> dead connections and
+		// then opens a new one
+		Connection con = connectionPool.getConnection();
+		assertFalse(con.isClosed());
+		assertEquals(maxSize + 1, mockConnectionFactory.getCount());
+		assertTrue(connectionPool.getPoolSize() <= maxSize - 3 + 1);
+
+		// The background check drops the remaining dead connections
+		long deadline = System.currentTimeMillis() + 5000;
+		while (connectionPool.getPoolSize() > 1
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, connectionPool.getPoolSize());
+		connectionPool.closeAllConnections();
+	}
+
+	/**
+	 * With a keepalive time set, the housekeeper should validate idle
+	 * connections in the background, keeping the healthy ones and dropping
+	 * connections that were dropped on the server side without being closed.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_KeepaliveValidation() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(2, maxSize);
+		config.setKeepaliveTime(20);
+		config.setHousekeepingPeriod(10);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		// Get hold of both connections, then have the server drop one of them
+		Connection first = connectionPool.getConnection();
+		Connection second = connectionPool.getConnection();
+		MockConnection healthy = physical(first);
+		MockConnection halfClosed = physical(second);
+		connectionPool.releaseConnection(first);
+		connectionPool.releaseConnection(second);
+		halfClosed.setValid(false);
+
+		// Wait for the housekeeper to notice
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((connectionPool.getPoolSize() > 1 || healthy
+				.getValidationCount() < 2)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		int poolSize = connectionPool.getPoolSize();
+		connectionPool.closeAllConnections();
+
+		// The healthy connection is kept alive, the dead one dropped
+		assertEquals(1, poolSize);
+		assertTrue(healthy.getValidationCount() >= 2);
+		assertTrue(halfClosed.isClosed());
+		assertEquals(2, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * A connection released moments ago should be handed out again without
+	 * validation, while one that has been idle longer than the skip window
+	 * should be validated first.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ValidationSkipWindow() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(1, 1);
+		config.setValidationSkipWindow(100);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		// Released just now, so the borrow skips validation
+		Connection con = connectionPool.getConnection();
+		MockConnection physical = physical(con);
+		int validations = physical.getValidationCount();
+		connectionPool.releaseConnection(con);
+		con = connectionPool.getConnection();
+		assertSame(physical, physical(con));
+		assertEquals(validations, physical.getValidationCount());
+
+		// Idle for longer than the window, so the borrow validates
+		connectionPool.releaseConnection(con);
+		Thread.sleep(150);
+		assertSame(physical, physical(connectionPool.getConnection()));
+		assertEquals(validations + 1, physical.getValidationCount());
+	}
+
+	/**
+	 * After a spike, connections that stay idle past the idle timeout should
+	 * be closed, but never below <minIdle>. Busy connections are left alone.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_IdleEviction() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(0, maxSize);
+		config.setIdleTimeout(30);
+		config.setMinIdle(2);
+		config.setHousekeepingPeriod(10);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		// Simulate a spike, keeping one connection busy afterwards
+		ArrayList<Connection> connections = new ArrayList<Connection>(maxSize);
+		for (int i = 0; i < maxSize; i++) {
+			connections.add(connectionPool.getConnection());
+		}
+		Connection busy = connections.remove(0);
+		for (Connection con : connections) {
+			connectionPool.releaseConnection(con);
+		}
+
+		// Wait for the housekeeper to shrink the pool
+		long deadline = System.currentTimeMillis() + 5000;
+		while (connectionPool.getPoolSize() > 3
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// <minIdle> free connections remain, plus the busy one
+		Thread.sleep(100);
+		assertEquals(3, connectionPool.getPoolSize());
+		assertFalse(busy.isClosed());
+		connectionPool.closeAllConnections();
+	}
+
+	/**
+	 * Keepalive validation keeps an idle connection alive on the database
+	 * side, but must not make it look used: connections should still be
+	 * evicted once they have been idle past the idle timeout.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_IdleEvictionWithKeepalive()
+			throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(3, maxSize);
+		config.setKeepaliveTime(50);
+		config.setIdleTimeout(300);
+		config.setHousekeepingPeriod(20);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		waitForPoolSize(connectionPool, 0);
+		connectionPool.closeAllConnections();
+	}
+
+	/**
+	 * Connections past their maximum lifetime should be retired: free ones by
+	 * the housekeeper, busy ones only once they are released.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_MaxLifetime() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(2, maxSize);
+		config.setMaxLifetime(50);
+		config.setMaxLifetimeJitter(10);
+		config.setHousekeepingPeriod(10);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+		Connection busy = connectionPool.getConnection();
+
+		// Wait for the free connection to be retired
+		long deadline = System.currentTimeMillis() + 5000;
+		while (connectionPool.getPoolSize() > 1
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, connectionPool.getPoolSize());
+
+		// The busy connection has expired too (allowing for the jitter), but
+		// is left alone until the client releases it
+		Thread.sleep(60);
+		MockConnection physical = physical(busy);
+		assertFalse(physical.isClosed());
+		connectionPool.releaseConnection(busy);
+		assertTrue(physical.isClosed());
+		assertEquals(0, connectionPool.getPoolSize());
+
+		// A new connection replaces the retired ones on demand
+		assertNotSame(physical, physical(connectionPool.getConnection()));
+		assertEquals(3, mockConnectionFactory.getCount());
+		connectionPool.closeAllConnections();
+	}
+
+	/**
+	 * With a warm-up concurrency above 1, the initial connections should be
+	 * opened in parallel, so a slow handshake does not add up per connection.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolInitialization_ParallelWarmup() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(8, maxSize);
+		config.setWarmupConcurrency(8);
+
+		long start = System.nanoTime();
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				slowFactory(100), config);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+
+		// Opening them one after another would take at least 800 ms
+		assertTrue(elapsed < 800);
+		assertTrue(connectionPool.getReadyFuture().isDone());
+		assertEquals(8, connectionPool.getPoolSize());
+		assertEquals(8, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * With asynchronous warm-up the constructor should return straight away,
+	 * and the ready future should complete once the initial connections are
+	 * open.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolInitialization_AsynchronousWarmup() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(4, maxSize);
+		config.setWarmupConcurrency(2);
+		config.setAsynchronousWarmup(true);
+
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				slowFactory(100), config);
+		assertFalse(connectionPool.getReadyFuture().isDone());
+
+		connectionPool.getReadyFuture().get(5, TimeUnit.SECONDS);
+		assertEquals(4, connectionPool.getPoolSize());
+		assertEquals(4, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * A factory that takes <delay> milliseconds per connection, like a real
+	 * database handshake.
+	 */
+	private ConnectionFactory slowFactory(final long delay) {
+		return new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+				return mockConnectionFactory.createConnection();
+			}
+		};
+	}
+
+	/**
+	 * With <minIdle> set, the pool should open spare connections in the
+	 * background as borrowers use up the free ones, up to <maxSize>.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_MinIdleFill() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(0, 4);
+		config.setMinIdle(2);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+
+		// The spare connections are opened without anyone asking for them
+		waitForPoolSize(connectionPool, 2);
+		assertEquals(2, mockConnectionFactory.getCount());
+
+		// Borrowing them triggers replacements, but never beyond <maxSize>
+		connectionPool.getConnection();
+		connectionPool.getConnection();
+		waitForPoolSize(connectionPool, 4);
+		Thread.sleep(100);
+		assertEquals(4, connectionPool.getPoolSize());
+		assertEquals(4, mockConnectionFactory.getCount());
+		connectionPool.closeAllConnections();
+	}
+
+	/**
+	 * A connection held past <leakDetectionThreshold> should be reported once,
+	 * with the stack trace of the code that borrowed it, and its release
+	 * should be noted.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_LeakDetection() throws Exception {
+		final List<LogRecord> records = Collections
+				.synchronizedList(new ArrayList<LogRecord>());
+		Handler handler = new Handler() {
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(ConnectionPoolImpl.class.getName());
+		logger.addHandler(handler);
+		logger.setUseParentHandlers(false);
+		try {
+			ConnectionPoolConfig config = new ConnectionPoolConfig(1, maxSize);
+			config.setHousekeepingPeriod(10);
+			config.setLeakDetectionThreshold(50);
+			ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+					mockConnectionFactory, config);
+
+			// Released in time, not a leak
+			connectionPool.releaseConnection(connectionPool.getConnection());
+
+			Connection leaked = connectionPool.getConnection();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (records.isEmpty()
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(100);
+			assertEquals(1, records.size());
+			LogRecord report = records.get(0);
+			assertEquals(Level.WARNING, report.getLevel());
+			assertSame(physical(leaked), report.getParameters()[0]);
+			assertNotNull(report.getThrown());
+			boolean borrowerFound = false;
+			for (StackTraceElement frame : report.getThrown().getStackTrace()) {
+				if (frame.getMethodName().equals(
+						"testPoolHousekeeping_LeakDetection")) {
+					borrowerFound = true;
+				}
+			}
+			assertTrue(borrowerFound);
+
+			connectionPool.releaseConnection(leaked);
+			assertEquals(2, records.size());
+			assertEquals(Level.INFO, records.get(1).getLevel());
+			connectionPool.closeAllConnections();
+		} finally {
+			logger.removeHandler(handler);
+			logger.setUseParentHandlers(true);
+		}
+	}
+
+	/**
+	 * A connection held past <abandonTimeout> should be closed and its slot
+	 * given to a waiting client. Releasing it afterwards should be ignored.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_AbandonedConnectionReclaimed()
+			throws Exception {
+		Logger logger = Logger.getLogger(ConnectionPoolImpl.class.getName());
+		logger.setUseParentHandlers(false);
+		try {
+			ConnectionPoolConfig config = new ConnectionPoolConfig(0, 1);
+			config.setHousekeepingPeriod(10);
+			config.setAbandonTimeout(50);
+			ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+					mockConnectionFactory, config);
+
+			Connection abandoned = connectionPool.getConnection();
+			Connection connection = connectionPool.getConnection(5,
+					TimeUnit.SECONDS);
+			MockConnection physical = physical(connection);
+			assertNotSame(physical(abandoned), physical);
+			assertTrue(abandoned.isClosed());
+			assertFalse(connection.isClosed());
+
+			connectionPool.releaseConnection(abandoned);
+			assertEquals(1, connectionPool.getPoolSize());
+			connectionPool.releaseConnection(connection);
+			assertSame(physical, physical(connectionPool.getConnection()));
+			connectionPool.closeAllConnections();
+		} finally {
+			logger.setUseParentHandlers(true);
+		}
+	}
+
+	/**
+	 * closeAllConnections() stops the housekeeper, but a pool used again
+	 * afterwards must get its housekeeping back, e.g. to reclaim abandoned
+	 * connections.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolHousekeeping_ResumesAfterClose() throws Exception {
+		Logger logger = Logger.getLogger(ConnectionPoolImpl.class.getName());
+		logger.setUseParentHandlers(false);
+		try {
+			ConnectionPoolConfig config = new ConnectionPoolConfig(0, 1);
+			config.setHousekeepingPeriod(10);
+			config.setAbandonTimeout(50);
+			ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+					mockConnectionFactory, config);
+			connectionPool.getConnection();
+			connectionPool.closeAllConnections();
+
+			Connection abandoned = connectionPool.getConnection();
+			Connection connection = connectionPool.getConnection(5,
+					TimeUnit.SECONDS);
+			assertTrue(abandoned.isClosed());
+			assertFalse(connection.isClosed());
+			connectionPool.closeAllConnections();
+		} finally {
+			logger.setUseParentHandlers(true);
+		}
+	}
+
+	/**
+	 * Closing a borrowed connection should return it to the pool rather than
+	 * close the physical connection, and leave the client's handle unusable.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_CloseReturnsConnectionToPool() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, maxSize);
+
+		Connection con = connectionPool.getConnection();
+		MockConnection physical = physical(con);
+		con.close();
+		assertTrue(con.isClosed());
+		assertFalse(physical.isClosed());
+		try {
+			con.createStatement();
+			fail("A closed handle should not reach the physical connection.");
+		} catch (SQLException e) {
+			// Expected
+		}
+
+		// Closing or releasing the handle again must not affect whoever
+		// borrows the connection next
+		Connection next = connectionPool.getConnection();
+		con.close();
+		connectionPool.releaseConnection(con);
+		assertSame(physical, physical(next));
+		assertFalse(next.isClosed());
+		assertEquals(1, connectionPool.getPoolSize());
+		assertEquals(1, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * Statements should lead back to the client's connection handle, not the
+	 * physical connection, and should no longer reach the database once the
+	 * connection has been returned to the pool.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_StatementsWrapped() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, maxSize);
+		Connection con = connectionPool.getConnection();
+
+		Statement statement = con.createStatement();
+		PreparedStatement prepared = con.prepareStatement("SELECT 1");
+		assertSame(con, statement.getConnection());
+		assertSame(con, prepared.getConnection());
+		assertEquals("SELECT 1",
+				prepared.unwrap(MockPreparedStatement.class).getSql());
+
+		connectionPool.releaseConnection(con);
+		try {
+			prepared.setInt(1, 1);
+			fail("A statement of a released connection should not be usable.");
+		} catch (SQLException e) {
+			// Expected
+		}
+		prepared.close();
+		assertTrue(prepared.isClosed());
+	}
+
+	/**
+	 * A result set kept after its connection was released must not be able to
+	 * fetch more rows, as that would use a connection lent to someone else.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ResultSetOfReleasedConnection() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, maxSize);
+		Connection con = connectionPool.getConnection();
+
+		ResultSet resultSet = con.prepareStatement("SELECT 1").executeQuery();
+		assertTrue(resultSet.next());
+		MockResultSet physical = resultSet.unwrap(MockResultSet.class);
+
+		connectionPool.releaseConnection(con);
+		try {
+			resultSet.next();
+			fail("A result set of a released connection should not be usable.");
+		} catch (SQLException e) {
+			// Expected
+		}
+		assertEquals(1, physical.getRowCount());
+		resultSet.close();
+		assertTrue(physical.isClosed());
+	}
+
+	/**
+	 * With a statement cache, closing a prepared statement should keep it
+	 * open for the next prepareStatement() of the same SQL and options on the
+	 * same connection, across borrows, until it is evicted as the least
+	 * recently used one.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_StatementCache() throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(1, 1);
+		config.setStatementCacheSize(2);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+		Connection con = connectionPool.getConnection();
+
+		PreparedStatement statement = con.prepareStatement("A");
+		MockPreparedStatement cached = statement
+				.unwrap(MockPreparedStatement.class);
+		statement.close();
+		assertTrue(statement.isClosed());
+		assertFalse(cached.isClosed());
+
+		// Reused within the borrow and after the connection was released
+		statement = con.prepareStatement("A");
+		assertSame(cached, statement.unwrap(MockPreparedStatement.class));
+		statement.close();
+		connectionPool.releaseConnection(con);
+		con = connectionPool.getConnection();
+		statement = con.prepareStatement("A");
+		assertSame(cached, statement.unwrap(MockPreparedStatement.class));
+
+		// Different result set options need a statement of their own
+		PreparedStatement scrollable = con.prepareStatement("A",
+				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		assertNotSame(cached, scrollable.unwrap(MockPreparedStatement.class));
+		statement.close();
+		scrollable.close();
+
+		// "A" was used least recently, so it makes room for "B"
+		con.prepareStatement("B").close();
+		assertTrue(cached.isClosed());
+
+		assertEquals(2, connectionPool.getStatementCacheHits());
+		assertEquals(3, connectionPool.getStatementCacheMisses());
+	}
+
+	/**
+	 * A statement that goes back to the statement cache must not pass a
+	 * pending batch, an open result set or changed settings on to whoever
+	 * prepares the same SQL next.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_StatementCacheResetsStatements()
+			throws Exception {
+		ConnectionPoolConfig config = new ConnectionPoolConfig(1, 1);
+		config.setStatementCacheSize(2);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, config);
+		Connection con = connectionPool.getConnection();
+
+		// A batch that was never executed is dropped
+		PreparedStatement statement = con.prepareStatement("INSERT");
+		MockPreparedStatement cached = statement
+				.unwrap(MockPreparedStatement.class);
+		statement.setInt(1, 1);
+		statement.addBatch();
+		statement.close();
+		statement = con.prepareStatement("INSERT");
+		assertSame(cached, statement.unwrap(MockPreparedStatement.class));
+		assertEquals(0, statement.executeBatch().length);
+
+		// The result set left open is closed
+		MockResultSet resultSet = statement.executeQuery().unwrap(
+				MockResultSet.class);
+		statement.close();
+		assertTrue(resultSet.isClosed());
+		assertFalse(cached.isClosed());
+
+		// A statement with changed settings is not cached
+		statement = con.prepareStatement("INSERT");
+		assertSame(cached, statement.unwrap(MockPreparedStatement.class));
+		statement.setMaxRows(10);
+		statement.close();
+		assertTrue(cached.isClosed());
+		statement = con.prepareStatement("INSERT");
+		assertNotSame(cached, statement.unwrap(MockPreparedStatement.class));
+		statement.close();
+	}
+
+	/**
+	 * Releasing a connection should restore only the session properties the
+	 * client changed, roll back a transaction left open, and cost nothing if
+	 * nothing was changed.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_SessionStateRestored() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+
+		// An untouched borrow is not reset
+		Connection con = connectionPool.getConnection();
+		MockConnection physical = physical(con);
+		connectionPool.releaseConnection(con);
+		assertEquals(0, physical.getStateChangeCount());
+		assertEquals(0, physical.getRollbackCount());
+
+		// Only what was changed is put back
+		con = connectionPool.getConnection();
+		con.setAutoCommit(false);
+		con.setReadOnly(true);
+		con.setSchema("other");
+		connectionPool.releaseConnection(con);
+		assertEquals(6, physical.getStateChangeCount());
+		assertEquals(1, physical.getRollbackCount());
+		assertTrue(physical.getAutoCommit());
+		assertFalse(physical.isReadOnly());
+		assertEquals("schema", physical.getSchema());
+		assertEquals(Connection.TRANSACTION_READ_COMMITTED,
+				physical.getTransactionIsolation());
+
+		// Setting a property back by hand still restores the original
+		con = connectionPool.getConnection();
+		con.setCatalog("other");
+		con.setCatalog("catalog");
+		con.close();
+		assertEquals(9, physical.getStateChangeCount());
+		assertEquals("catalog", physical.getCatalog());
+	}
+
+	/**
+	 * A batch borrow should get all of its connections or none of them, and
+	 * batches competing for most of the pool should both be served instead of
+	 * each holding part of what they need.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_BatchBorrow() throws Exception {
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 0, 4);
+
+		// One connection is busy, so a batch of 4 cannot be served
+		Connection busy = connectionPool.getConnection();
+		try {
+			connectionPool.getConnections(4, 100, TimeUnit.MILLISECONDS);
+			fail("The batch should not have been served.");
+		} catch (SQLTimeoutException e) {
+			// Expected
+		}
+		// The connections the batch had gathered are free again
+		List<Connection> three = connectionPool.getConnections(3, 0,
+				TimeUnit.MILLISECONDS);
+		assertEquals(3, three.size());
+		connectionPool.releaseConnections(three);
+		connectionPool.releaseConnection(busy);
+
+		try {
+			connectionPool.getConnections(5, 0, TimeUnit.MILLISECONDS);
+			fail("A batch larger than the pool can never be served.");
+		} catch (SQLException e) {
+			// Expected
+		}
+
+		// Two batches of 3 out of 4 connections are served one after another
+		final AtomicInteger served = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(2);
+		Runnable batch = new Runnable() {
+			public void run() {
+				try {
+					List<Connection> cons = connectionPool.getConnections(3,
+							5, TimeUnit.SECONDS);
+					Thread.sleep(50);
+					connectionPool.releaseConnections(cons);
+					served.incrementAndGet();
+				} catch (Exception e) {
+					// Verified through <served> below
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		new Thread(batch).start();
+		new Thread(batch).start();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(2, served.get());
+		assertEquals(4, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * If giving back the connections of a batch that timed out fails as well,
+	 * the caller should still see the timeout, with the release failure
+	 * attached to it.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_BatchTimeoutKeptOverReleaseFailure()
+			throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 0, 2) {
+			public void releaseConnection(Connection con) throws SQLException {
+				super.releaseConnection(con);
+				throw new SQLException("Release failed");
+			}
+		};
+
+		connectionPool.getConnection();
+		try {
+			connectionPool.getConnections(2, 50, TimeUnit.MILLISECONDS);
+			fail("The batch should not have been served.");
+		} catch (SQLTimeoutException e) {
+			assertEquals(1, e.getSuppressed().length);
+			assertEquals("Release failed", e.getSuppressed()[0].getMessage());
+		}
+		// The connection the batch had gathered was released all the same
+		connectionPool.getConnection();
+		assertEquals(2, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * getConnectionAsync() should complete at once when a connection is free,
+	 * later when one is released, and fail when its timeout expires.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_AsyncBorrow() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+
+		CompletableFuture<Connection> future = connectionPool
+				.getConnectionAsync(0, TimeUnit.MILLISECONDS);
+		assertTrue(future.isDone());
+		Connection con = future.get();
+		MockConnection physical = physical(con);
+
+		future = connectionPool.getConnectionAsync(5, TimeUnit.SECONDS);
+		assertFalse(future.isDone());
+		connectionPool.releaseConnection(con);
+		con = future.get(5, TimeUnit.SECONDS);
+		assertSame(physical, physical(con));
+
+		future = connectionPool.getConnectionAsync(50, TimeUnit.MILLISECONDS);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The future should have timed out.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SQLTimeoutException);
+		}
+
+		// The timed out future does not swallow the next release
+		connectionPool.releaseConnection(con);
+		assertSame(physical, physical(connectionPool.getConnection()));
+	}
+
+	/**
+	 * A future's timeout should be honoured even while the housekeeper is
+	 * stuck, here opening a connection for <minIdle> with a factory that does
+	 * not answer.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_AsyncTimeoutWhileHousekeeperBusy()
+			throws Exception {
+		final CountDownLatch factoryEntered = new CountDownLatch(1);
+		final CountDownLatch factoryUnblocked = new CountDownLatch(1);
+		ConnectionFactory stuckFactory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				factoryEntered.countDown();
+				try {
+					factoryUnblocked.await();
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+				return mockConnectionFactory.createConnection();
+			}
+		};
+		ConnectionPoolConfig config = new ConnectionPoolConfig(0, 2);
+		config.setMinIdle(1);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				stuckFactory, config);
+		try {
+			assertTrue(factoryEntered.await(5, TimeUnit.SECONDS));
+
+			CompletableFuture<Connection> future = connectionPool
+					.getConnectionAsync(100, TimeUnit.MILLISECONDS);
+			try {
+				future.get(2, TimeUnit.SECONDS);
+				fail("The future should have timed out.");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof SQLTimeoutException);
+			}
+		} finally {
+			factoryUnblocked.countDown();
+			connectionPool.closeAllConnections();
+		}
+	}
+
+	/**
+	 * A free connection that has to be validated before it is lent out
+	 * should be checked on a background thread, not on the thread calling
+	 * getConnectionAsync().
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_AsyncBorrowValidatesInBackground()
+			throws Exception {
+		final AtomicReference<Thread> validatedOn = new AtomicReference<Thread>();
+		ConnectionFactory factory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				return new MockConnection() {
+					public boolean isValid(int timeout) throws SQLException {
+						validatedOn.set(Thread.currentThread());
+						return super.isValid(timeout);
+					}
+				};
+			}
+		};
+		ConnectionPoolConfig config = new ConnectionPoolConfig(1, 1);
+		config.setValidationSkipWindow(0);
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(factory,
+				config);
+
+		Connection con = connectionPool.getConnectionAsync(5,
+				TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+		assertNotNull(validatedOn.get());
+		assertNotSame(Thread.currentThread(), validatedOn.get());
+		connectionPool.releaseConnection(con);
+		connectionPool.closeAllConnections();
+	}
+
+	/**
+	 * While the factory is slow, connections for several futures should be
+	 * opened side by side, and each future should still fail once its timeout
+	 * has passed. The connections opened too late go to the free pool.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_AsyncBorrowWithSlowFactory() throws Exception {
+		final CountDownLatch factoryEntered = new CountDownLatch(3);
+		final CountDownLatch factoryUnblocked = new CountDownLatch(1);
+		ConnectionFactory slowFactory = new ConnectionFactory() {
+			public Connection createConnection() throws SQLException {
+				factoryEntered.countDown();
+				try {
+					factoryUnblocked.await();
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+				return mockConnectionFactory.createConnection();
+			}
+		};
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				slowFactory, 0, 3);
+
+		ArrayList<CompletableFuture<Connection>> futures = new ArrayList<CompletableFuture<Connection>>();
+		for (int i = 0; i < 3; i++) {
+			futures.add(connectionPool.getConnectionAsync(100,
+					TimeUnit.MILLISECONDS));
+		}
+		assertTrue(factoryEntered.await(5, TimeUnit.SECONDS));
+		for (CompletableFuture<Connection> future : futures) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("The future should have timed out.");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof SQLTimeoutException);
+			}
+		}
+
+		factoryUnblocked.countDown();
+		waitForPoolSize(connectionPool, 3);
+		List<Connection> cons = connectionPool.getConnections(3, 5,
+				TimeUnit.SECONDS);
+		assertEquals(3, cons.size());
+		assertEquals(3, mockConnectionFactory.getCount());
+	}
+
+	/**
+	 * Many more asynchronous borrowers than connections should all be served
+	 * by connections being opened and released, without blocking threads.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ManyAsyncWaiters() throws Exception {
+		final ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 0, 2);
+
+		ArrayList<CompletableFuture<Void>> served = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 100; i++) {
+			served.add(connectionPool.getConnectionAsync(10, TimeUnit.SECONDS)
+					.thenAcceptAsync(new Consumer<Connection>() {
+						public void accept(Connection con) {
+							try {
+								connectionPool.releaseConnection(con);
+							} catch (SQLException e) {
+								throw new CompletionException(e);
+							}
+						}
+					}));
+		}
+		CompletableFuture.allOf(served.toArray(new CompletableFuture<?>[0]))
+				.get(20, TimeUnit.SECONDS);
+		assertTrue(mockConnectionFactory.getCount() <= 2);
+	}
+
+	/**
+	 * ConnectionPublisher should borrow only what has been requested, one
+	 * connection at a time, give back a borrow that completes after the
+	 * subscription was cancelled, and fail the stream when a borrow times
+	 * out.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ConnectionPublisher() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+		ConnectionPublisher publisher = new ConnectionPublisher(
+				connectionPool, 5, TimeUnit.SECONDS);
+
+		CollectingSubscriber subscriber = new CollectingSubscriber();
+		publisher.subscribe(subscriber);
+		assertNotNull(subscriber.subscription);
+		assertTrue(subscriber.connections.isEmpty());
+
+		subscriber.subscription.request(3);
+		Connection con = subscriber.connections.poll(5, TimeUnit.SECONDS);
+		assertNotNull(con);
+		MockConnection physical = physical(con);
+		// The pool is saturated, so the second borrow waits there
+		assertTrue(subscriber.connections.isEmpty());
+
+		connectionPool.releaseConnection(con);
+		con = subscriber.connections.poll(5, TimeUnit.SECONDS);
+		assertNotNull(con);
+		assertSame(physical, physical(con));
+
+		// The third borrow is given up, so the release goes back to the pool
+		subscriber.subscription.cancel();
+		connectionPool.releaseConnection(con);
+		assertSame(physical, physical(connectionPool.getConnection()));
+		assertTrue(subscriber.connections.isEmpty());
+		assertNull(subscriber.failure.get());
+
+		publisher = new ConnectionPublisher(connectionPool, 50,
+				TimeUnit.MILLISECONDS);
+		subscriber = new CollectingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(1);
+		assertTrue(subscriber.failed.await(5, TimeUnit.SECONDS));
+		assertTrue(subscriber.failure.get() instanceof SQLTimeoutException);
+		assertTrue(subscriber.connections.isEmpty());
+	}
+
+	/**
+	 * A connection a ConnectionPublisher borrows once another client releases
+	 * one should be delivered on the publisher's executor, not on the
+	 * releasing thread.
+	 * 
+	 * @throws Exception
+	 */
+	public void testPoolUsage_ConnectionPublisherExecutor() throws Exception {
+		ConnectionPoolImpl connectionPool = new ConnectionPoolImpl(
+				mockConnectionFactory, 1, 1);
+		final AtomicReference<Thread> executorThread = new AtomicReference<Thread>();
+		ExecutorService executor = Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "publisher");
+						executorThread.set(thread);
+						return thread;
+					}
+				});
+		try {
+			ConnectionPublisher publisher = new ConnectionPublisher(
+					connectionPool, 5, TimeUnit.SECONDS, executor);
+			Connection held = connectionPool.getConnection();
+
+			CollectingSubscriber subscriber = new CollectingSubscriber();
+			publisher.subscribe(subscriber);
+			subscriber.subscription.request(1);
+			connectionPool.releaseConnection(held);
+
+			Connection con = subscriber.connections.poll(5, TimeUnit.SECONDS);
+			assertNotNull(con);
+			assertSame(executorThread.get(), subscriber.deliveredOn);
+			subscriber.subscription.cancel();
+			connectionPool.releaseConnection(con);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Get the mock connection behind a pooled connection handle.
+	 */
+	private static MockConnection physical(Connection con) throws SQLException {
+		return con.unwrap(MockConnection.class);
+	}
+
+	/**
+	 * Wait up to five seconds for the pool to reach the given size, with all
+	 * of its connections opened by the factory.
+	 */
+	private void waitForPoolSize(ConnectionPoolImpl connectionPool, int size)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((connectionPool.getPoolSize() != size || mockConnectionFactory
+				.getCount() < size) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(size, connectionPool.getPoolSize());
+	}
+
+	/**
+	 * Subscriber that keeps the connections it is sent for the test to check.
+	 */
+	private static class CollectingSubscriber implements
+			Flow.Subscriber<Connection> {
+		final BlockingQueue<Connection> connections = new LinkedBlockingQueue<Connection>();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch failed = new CountDownLatch(1);
+		volatile Flow.Subscription subscription;
+		volatile Thread deliveredOn;
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		public void onNext(Connection con) {
+			deliveredOn = Thread.currentThread();
+			connections.add(con);
+		}
+
+		public void onError(Throwable throwable) {
+			failure.set(throwable);
+			failed.countDown();
+		}
+
+		public void onComplete() {
+		}
+	}
+
 }
@@ -4,6 +4,7 @@ import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
 import java.sql.Clob;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
@@ -16,6 +17,8 @@ import java.sql.Statement;
 import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * Mock connection for use with MockConnectionFactory
@@ -27,7 +30,7 @@ public class MockConnection implements java.sql.Connection {
 	/*
 	 * New connections are "open" by default
 	 */
-	private boolean closed = false;
+	private volatile boolean closed = false;
 
 	/*
 	 * Maintains the state of the connection
@@ -39,7 +42,96 @@ public class MockConnection implements java.sql.Connection {
 	public boolean isClosed() throws SQLException {
 		return this.closed;
 	}
+
+	/*
+	 * Simulates a connection the server or a firewall has dropped without the
+	 * client noticing: it is not closed, but no longer valid.
+	 */
+	private volatile boolean valid = true;
+	private final AtomicInteger validationCount = new AtomicInteger();
+
+	public void setValid(boolean valid) {
+		this.valid = valid;
+	}
+
+	public int getValidationCount() {
+		return this.validationCount.get();
+	}
+
+	public boolean isValid(int timeout) throws SQLException {
+		this.validationCount.incrementAndGet();
+		return !this.closed && this.valid;
+	}
 	
+	/*
+	 * Session state, with a count of the calls that change it so that tests
+	 * can verify how much work a reset costs
+	 */
+	private boolean autoCommit = true;
+	private int transactionIsolation = Connection.TRANSACTION_READ_COMMITTED;
+	private boolean readOnly = false;
+	private String catalog = "catalog";
+	private String schema = "schema";
+	private int stateChangeCount = 0;
+	private int rollbackCount = 0;
+
+	public int getStateChangeCount() {
+		return this.stateChangeCount;
+	}
+
+	public int getRollbackCount() {
+		return this.rollbackCount;
+	}
+
+	public boolean getAutoCommit() throws SQLException {
+		return this.autoCommit;
+	}
+
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		this.autoCommit = autoCommit;
+		this.stateChangeCount++;
+	}
+
+	public int getTransactionIsolation() throws SQLException {
+		return this.transactionIsolation;
+	}
+
+	public void setTransactionIsolation(int level) throws SQLException {
+		this.transactionIsolation = level;
+		this.stateChangeCount++;
+	}
+
+	public boolean isReadOnly() throws SQLException {
+		return this.readOnly;
+	}
+
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		this.readOnly = readOnly;
+		this.stateChangeCount++;
+	}
+
+	public String getCatalog() throws SQLException {
+		return this.catalog;
+	}
+
+	public void setCatalog(String catalog) throws SQLException {
+		this.catalog = catalog;
+		this.stateChangeCount++;
+	}
+
+	public String getSchema() throws SQLException {
+		return this.schema;
+	}
+
+	public void setSchema(String schema) throws SQLException {
+		this.schema = schema;
+		this.stateChangeCount++;
+	}
+
+	public void rollback() throws SQLException {
+		this.rollbackCount++;
+	}
+
 	/*
 	 * Remaining unimplemented methods
 	 */
@@ -82,18 +174,18 @@ public class MockConnection implements java.sql.Connection {
 	}
 
 	public Statement createStatement() throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, null);
 	}
 
 	public Statement createStatement(int resultSetType, int resultSetConcurrency)
 			throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, null);
 	}
 
 	public Statement createStatement(int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 			throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, null);
 	}
 
 	public Struct createStruct(String typeName, Object[] attributes)
@@ -101,14 +193,6 @@ public class MockConnection implements java.sql.Connection {
 		return null;
 	}
 
-	public boolean getAutoCommit() throws SQLException {
-		return false;
-	}
-
-	public String getCatalog() throws SQLException {
-		return null;
-	}
-
 	public Properties getClientInfo() throws SQLException {
 		return null;
 	}
@@ -125,10 +209,6 @@ public class MockConnection implements java.sql.Connection {
 		return null;
 	}
 
-	public int getTransactionIsolation() throws SQLException {
-		return 0;
-	}
-
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Map getTypeMap() throws SQLException {
 		return null;
@@ -138,14 +218,6 @@ public class MockConnection implements java.sql.Connection {
 		return null;
 	}
 
-	public boolean isReadOnly() throws SQLException {
-		return false;
-	}
-
-	public boolean isValid(int timeout) throws SQLException {
-		return false;
-	}
-
 	public String nativeSQL(String sql) throws SQLException {
 		return null;
 	}
@@ -166,50 +238,41 @@ public class MockConnection implements java.sql.Connection {
 	}
 
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, sql);
 	}
 
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
 			throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, sql);
 	}
 
 	public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
 			throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, sql);
 	}
 
 	public PreparedStatement prepareStatement(String sql, String[] columnNames)
 			throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, sql);
 	}
 
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency) throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, sql);
 	}
 
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 			throws SQLException {
-		return null;
+		return new MockPreparedStatement(this, sql);
 	}
 
 	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
 	}
 
-	public void rollback() throws SQLException {
-	}
-
 	public void rollback(Savepoint savepoint) throws SQLException {
 	}
 
-	public void setAutoCommit(boolean autoCommit) throws SQLException {
-	}
-
-	public void setCatalog(String catalog) throws SQLException {
-	}
-
 	public void setClientInfo(Properties properties)
 			throws SQLClientInfoException {
 	}
@@ -221,9 +284,6 @@ public class MockConnection implements java.sql.Connection {
 	public void setHoldability(int holdability) throws SQLException {
 	}
 
-	public void setReadOnly(boolean readOnly) throws SQLException {
-	}
-
 	public Savepoint setSavepoint() throws SQLException {
 		return null;
 	}
@@ -232,10 +292,18 @@ public class MockConnection implements java.sql.Connection {
 		return null;
 	}
 
-	public void setTransactionIsolation(int level) throws SQLException {
-	}
-
 	@SuppressWarnings("rawtypes")
 	public void setTypeMap(Map arg0) throws SQLException {
 	}
+
+	public void abort(Executor executor) throws SQLException {
+	}
+
+	public void setNetworkTimeout(Executor executor, int milliseconds)
+			throws SQLException {
+	}
+
+	public int getNetworkTimeout() throws SQLException {
+		return 0;
+	}
 }
\ No newline at end of file
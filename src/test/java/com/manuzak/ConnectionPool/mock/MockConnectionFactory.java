@@ -2,6 +2,7 @@ package com.manuzak.ConnectionPool.mock;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.manuzak.connectionpool.ConnectionFactory;
 
@@ -14,17 +15,18 @@ public class MockConnectionFactory implements ConnectionFactory {
 
 	/*
 	 * Maintain a counter with the number of connections created by the factory.
-	 * This is helpful for verification during unit testing.
+	 * This is helpful for verification during unit testing. The counter is
+	 * atomic because the pool may call the factory from several threads.
 	 */
-	private int connectionCounter = 0;
+	private final AtomicInteger connectionCounter = new AtomicInteger();
 
 	public int getCount() {
-		return this.connectionCounter;
+		return this.connectionCounter.get();
 	}
 
 	public Connection createConnection() throws SQLException {
 		Connection mockConnection = new MockConnection();
-		this.connectionCounter++;
+		this.connectionCounter.incrementAndGet();
 		return mockConnection;
 	}
 }
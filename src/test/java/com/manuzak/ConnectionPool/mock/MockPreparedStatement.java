@@ -0,0 +1,490 @@
+package com.manuzak.ConnectionPool.mock;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/*
+ * Mock statement for use with MockConnection
+ * @see com.manuzak.ConnectionPool.mock.MockConnection
+ *
+ */
+public class MockPreparedStatement implements PreparedStatement {
+
+	private final Connection connection;
+	private final String sql;
+
+	public MockPreparedStatement(Connection connection, String sql) {
+		this.connection = connection;
+		this.sql = sql;
+	}
+
+	/*
+	 * The SQL the statement was prepared with, or null for a plain statement
+	 */
+	public String getSql() {
+		return this.sql;
+	}
+
+	public Connection getConnection() throws SQLException {
+		return this.connection;
+	}
+
+	/*
+	 * New statements are "open" by default
+	 */
+	private volatile boolean closed = false;
+
+	public void close() throws SQLException {
+		this.closed = true;
+	}
+
+	public boolean isClosed() throws SQLException {
+		return this.closed;
+	}
+
+	/*
+	 * The result set of the last query, until the next one is run
+	 */
+	private volatile MockResultSet resultSet;
+
+	public ResultSet executeQuery() throws SQLException {
+		this.resultSet = new MockResultSet(this);
+		return this.resultSet;
+	}
+
+	public ResultSet executeQuery(String sql) throws SQLException {
+		return executeQuery();
+	}
+
+	public ResultSet getResultSet() throws SQLException {
+		return this.resultSet;
+	}
+
+	/*
+	 * Batched commands are counted, and executeBatch() reports one update
+	 * count for each
+	 */
+	private volatile int batchSize;
+
+	public void addBatch() throws SQLException {
+		this.batchSize++;
+	}
+
+	public void addBatch(String sql) throws SQLException {
+		this.batchSize++;
+	}
+
+	public void clearBatch() throws SQLException {
+		this.batchSize = 0;
+	}
+
+	public int[] executeBatch() throws SQLException {
+		int[] updateCounts = new int[this.batchSize];
+		this.batchSize = 0;
+		return updateCounts;
+	}
+
+	/*
+	 * Remaining unimplemented methods
+	 */
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return false;
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return null;
+	}
+
+	public int executeUpdate(String sql) throws SQLException {
+		return 0;
+	}
+
+	public int getMaxFieldSize() throws SQLException {
+		return 0;
+	}
+
+	public void setMaxFieldSize(int max) throws SQLException {
+	}
+
+	public int getMaxRows() throws SQLException {
+		return 0;
+	}
+
+	public void setMaxRows(int max) throws SQLException {
+	}
+
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+	}
+
+	public int getQueryTimeout() throws SQLException {
+		return 0;
+	}
+
+	public void setQueryTimeout(int seconds) throws SQLException {
+	}
+
+	public void cancel() throws SQLException {
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return null;
+	}
+
+	public void clearWarnings() throws SQLException {
+	}
+
+	public void setCursorName(String name) throws SQLException {
+	}
+
+	public boolean execute(String sql) throws SQLException {
+		return false;
+	}
+
+	public int getUpdateCount() throws SQLException {
+		return 0;
+	}
+
+	public boolean getMoreResults() throws SQLException {
+		return false;
+	}
+
+	public void setFetchDirection(int direction) throws SQLException {
+	}
+
+	public int getFetchDirection() throws SQLException {
+		return 0;
+	}
+
+	public void setFetchSize(int rows) throws SQLException {
+	}
+
+	public int getFetchSize() throws SQLException {
+		return 0;
+	}
+
+	public int getResultSetConcurrency() throws SQLException {
+		return 0;
+	}
+
+	public int getResultSetType() throws SQLException {
+		return 0;
+	}
+
+	public boolean getMoreResults(int current) throws SQLException {
+		return false;
+	}
+
+	public ResultSet getGeneratedKeys() throws SQLException {
+		return null;
+	}
+
+	public int executeUpdate(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return 0;
+	}
+
+	public int executeUpdate(String sql, int[] columnIndexes)
+			throws SQLException {
+		return 0;
+	}
+
+	public int executeUpdate(String sql, String[] columnNames)
+			throws SQLException {
+		return 0;
+	}
+
+	public boolean execute(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return false;
+	}
+
+	public boolean execute(String sql, int[] columnIndexes)
+			throws SQLException {
+		return false;
+	}
+
+	public boolean execute(String sql, String[] columnNames)
+			throws SQLException {
+		return false;
+	}
+
+	public int getResultSetHoldability() throws SQLException {
+		return 0;
+	}
+
+	public void setPoolable(boolean poolable) throws SQLException {
+	}
+
+	public boolean isPoolable() throws SQLException {
+		return false;
+	}
+
+	public void closeOnCompletion() throws SQLException {
+	}
+
+	public boolean isCloseOnCompletion() throws SQLException {
+		return false;
+	}
+
+	public long getLargeUpdateCount() throws SQLException {
+		return 0;
+	}
+
+	public void setLargeMaxRows(long max) throws SQLException {
+	}
+
+	public long getLargeMaxRows() throws SQLException {
+		return 0;
+	}
+
+	public long[] executeLargeBatch() throws SQLException {
+		return null;
+	}
+
+	public long executeLargeUpdate(String sql) throws SQLException {
+		return 0;
+	}
+
+	public long executeLargeUpdate(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return 0;
+	}
+
+	public long executeLargeUpdate(String sql, int[] columnIndexes)
+			throws SQLException {
+		return 0;
+	}
+
+	public long executeLargeUpdate(String sql, String[] columnNames)
+			throws SQLException {
+		return 0;
+	}
+
+	public int executeUpdate() throws SQLException {
+		return 0;
+	}
+
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+	}
+
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+	}
+
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+	}
+
+	public void setShort(int parameterIndex, short x) throws SQLException {
+	}
+
+	public void setInt(int parameterIndex, int x) throws SQLException {
+	}
+
+	public void setLong(int parameterIndex, long x) throws SQLException {
+	}
+
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+	}
+
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+	}
+
+	public void setBigDecimal(int parameterIndex, BigDecimal x)
+			throws SQLException {
+	}
+
+	public void setString(int parameterIndex, String x) throws SQLException {
+	}
+
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+	}
+
+	public void setDate(int parameterIndex, Date x)
+			throws SQLException {
+	}
+
+	public void setTime(int parameterIndex, Time x)
+			throws SQLException {
+	}
+
+	public void setTimestamp(int parameterIndex, Timestamp x)
+			throws SQLException {
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x,
+			int length) throws SQLException {
+	}
+
+	@Deprecated
+	public void setUnicodeStream(int parameterIndex, InputStream x,
+			int length) throws SQLException {
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x,
+			int length) throws SQLException {
+	}
+
+	public void clearParameters() throws SQLException {
+	}
+
+	public void setObject(int parameterIndex, Object x, int targetSqlType)
+			throws SQLException {
+	}
+
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+	}
+
+	public boolean execute() throws SQLException {
+		return false;
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader,
+			int length) throws SQLException {
+	}
+
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+	}
+
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+	}
+
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+	}
+
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+	}
+
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return null;
+	}
+
+	public void setDate(int parameterIndex, Date x, Calendar cal)
+			throws SQLException {
+	}
+
+	public void setTime(int parameterIndex, Time x, Calendar cal)
+			throws SQLException {
+	}
+
+	public void setTimestamp(int parameterIndex, Timestamp x,
+			Calendar cal) throws SQLException {
+	}
+
+	public void setNull(int parameterIndex, int sqlType, String typeName)
+			throws SQLException {
+	}
+
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+	}
+
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		return null;
+	}
+
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+	}
+
+	public void setNString(int parameterIndex, String value)
+			throws SQLException {
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader value,
+			long length) throws SQLException {
+	}
+
+	public void setNClob(int parameterIndex, NClob value) throws SQLException {
+	}
+
+	public void setClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+	}
+
+	public void setBlob(int parameterIndex, InputStream inputStream,
+			long length) throws SQLException {
+	}
+
+	public void setNClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+	}
+
+	public void setSQLXML(int parameterIndex, SQLXML xmlObject)
+			throws SQLException {
+	}
+
+	public void setObject(int parameterIndex, Object x, int targetSqlType,
+			int scaleOrLength) throws SQLException {
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x,
+			long length) throws SQLException {
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x,
+			long length) throws SQLException {
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader,
+			long length) throws SQLException {
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x)
+			throws SQLException {
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x)
+			throws SQLException {
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader)
+			throws SQLException {
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader value)
+			throws SQLException {
+	}
+
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+	}
+
+	public void setBlob(int parameterIndex, InputStream inputStream)
+			throws SQLException {
+	}
+
+	public void setNClob(int parameterIndex, Reader reader)
+			throws SQLException {
+	}
+
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType,
+			int scaleOrLength) throws SQLException {
+	}
+
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType)
+			throws SQLException {
+	}
+
+	public long executeLargeUpdate() throws SQLException {
+		return 0;
+	}
+
+}